@@ -0,0 +1,56 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+/**
+ * 벤치마크용 인메모리 H2 DataSource
+ * 이름별로 독립된 DB, 마지막 커넥션이 닫혀도 JVM 이 끝날 때까지 유지 (DB_CLOSE_DELAY=-1)
+ */
+public abstract class BenchmarkDataSources {
+
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * 커넥션 풀 + schema-reset.sql, schema.sql 로 빈 테이블 초기화
+     */
+    public static HikariDataSource pooled(String name, int maximumPoolSize) {
+        return pooled(name, maximumPoolSize, null);
+    }
+
+    /**
+     * @param connectionInitSql 커넥션 생성 시 실행할 sql (예: SET LOCK_TIMEOUT 1000), 없으면 null
+     */
+    public static HikariDataSource pooled(String name, int maximumPoolSize, String connectionInitSql) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url(name));
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setPoolName(name);
+        dataSource.setConnectionInitSql(connectionInitSql);
+        initSchema(dataSource);
+        return dataSource;
+    }
+
+    /**
+     * 항상 새로운 커넥션 획득 (MemberRepositoryV0 의 DriverManager 방식)
+     * 같은 이름의 pooled() 가 먼저 만들어져 있어야 같은 DB 를 본다.
+     */
+    public static DriverManagerDataSource driverManager(String name) {
+        return new DriverManagerDataSource(url(name), USERNAME, PASSWORD);
+    }
+
+    public static void initSchema(DataSource dataSource) {
+        new ResourceDatabasePopulator(new ClassPathResource("schema-reset.sql"), new ClassPathResource("schema.sql")).execute(dataSource);
+    }
+}
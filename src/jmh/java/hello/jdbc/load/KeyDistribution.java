@@ -0,0 +1,45 @@
+package hello.jdbc.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 이체 대상 계좌 번호(0 ~ accountCount-1) 분포
+ */
+public interface KeyDistribution {
+
+    int next(ThreadLocalRandom random);
+
+    /**
+     * 모든 계좌 균등
+     */
+    static KeyDistribution uniform(int accountCount) {
+        return random -> random.nextInt(accountCount);
+    }
+
+    /**
+     * hotRatio 비율로 0번 계좌 하나에 몰림, 나머지는 균등
+     */
+    static KeyDistribution hotAccount(int accountCount, double hotRatio) {
+        return random -> random.nextDouble() < hotRatio ? 0 : 1 + random.nextInt(accountCount - 1);
+    }
+
+    /**
+     * 순위 k 의 확률이 1 / k^exponent 에 비례 (0번이 가장 인기)
+     */
+    static KeyDistribution zipfian(int accountCount, double exponent) {
+        return new ZipfianDistribution(accountCount, exponent);
+    }
+
+    static KeyDistribution of(String name, int accountCount, double zipfExponent, double hotRatio) {
+        switch (name) {
+            case "uniform":
+                return uniform(accountCount);
+            case "zipfian":
+                return zipfian(accountCount, zipfExponent);
+            case "hot":
+                return hotAccount(accountCount, hotRatio);
+            default:
+                throw new IllegalArgumentException("unknown distribution=" + name);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package hello.jdbc.load;
+
+import org.springframework.dao.PessimisticLockingFailureException;
+
+import java.sql.SQLException;
+
+/**
+ * 스레드별 부하 결과 (스레드 하나만 기록하고 끝난 뒤 merge)
+ *
+ * 지연 시간은 요청마다 저장하지 않고 HdrHistogram 과 같은 log-linear 버킷에 센다. (실행 시간과 관계없이 고정 크기)
+ * 2의 거듭제곱 구간마다 64칸으로 나누므로 백분위 값의 오차는 1/64 (약 1.6%) 이하, 최대값은 정확하다.
+ */
+public class LoadStats {
+
+    //H2 LOCK_TIMEOUT_1, DEADLOCK_1
+    private static final int H2_LOCK_TIMEOUT = 50200;
+    private static final int H2_DEADLOCK = 40001;
+
+    //0 ~ 127 은 1ns 단위 그대로, 그 위는 구간마다 SUB_BUCKET_HALF 칸
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    //long 양수 최대값까지 (63 - SUB_BUCKET_BITS 개 구간)
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long maxLatency;
+    private long count;
+    private long success;
+    private long rollback;
+    private long lockTimeout;
+
+    public void success(long latencyNanos) {
+        record(latencyNanos);
+        success++;
+    }
+
+    public void failure(long latencyNanos, Throwable e) {
+        record(latencyNanos);
+        rollback++;
+        if (isLockFailure(e)) {
+            lockTimeout++;
+        }
+    }
+
+    private void record(long latencyNanos) {
+        long latency = Math.max(0, latencyNanos);
+        buckets[bucketIndex(latency)]++;
+        maxLatency = Math.max(maxLatency, latency);
+        count++;
+    }
+
+    static int bucketIndex(long value) {
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        if (shift <= 0) {
+            return (int) value;
+        }
+        //value >>> shift 는 SUB_BUCKET_HALF ~ SUB_BUCKET_COUNT - 1
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * 버킷에 들어가는 가장 큰 값
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * 서비스 버전마다 예외를 감싸는 방식이 달라서 cause 를 끝까지 확인
+     */
+    static boolean isLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PessimisticLockingFailureException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                int errorCode = ((SQLException) cause).getErrorCode();
+                if (errorCode == H2_LOCK_TIMEOUT || errorCode == H2_DEADLOCK) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public static LoadStats merge(Iterable<LoadStats> statsList) {
+        LoadStats merged = new LoadStats();
+        for (LoadStats stats : statsList) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                merged.buckets[i] += stats.buckets[i];
+            }
+            merged.maxLatency = Math.max(merged.maxLatency, stats.maxLatency);
+            merged.count += stats.count;
+            merged.success += stats.success;
+            merged.rollback += stats.rollback;
+            merged.lockTimeout += stats.lockTimeout;
+        }
+        return merged;
+    }
+
+    /**
+     * percentile 번째 요청이 들어간 버킷의 가장 큰 값 (최대값을 넘지 않는다)
+     */
+    public long percentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, Math.min(count, (long) Math.ceil(percentile / 100 * count)));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), maxLatency);
+            }
+        }
+        return maxLatency;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSuccess() {
+        return success;
+    }
+
+    public long getRollback() {
+        return rollback;
+    }
+
+    public long getLockTimeout() {
+        return lockTimeout;
+    }
+}
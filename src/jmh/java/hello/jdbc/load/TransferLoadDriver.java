@@ -0,0 +1,227 @@
+package hello.jdbc.load;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.BenchmarkDataSources;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.GroupCommitTransferService;
+import hello.jdbc.service.MemberService;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.MemberServiceV5;
+import hello.jdbc.service.MemberServiceV6;
+import hello.jdbc.service.MemberServiceV7;
+import hello.jdbc.service.MemberServiceV8;
+import hello.jdbc.service.TransactionalProxy;
+import hello.jdbc.service.TransferResult;
+import hello.jdbc.service.ledger.LedgerMemberService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 인기 계좌 경합 재현용 이체 부하 발생기
+ * N 개 스레드가 지정된 분포로 계좌 두개를 골라 MemberService.accountTransFer 를 계속 호출하고
+ * 처리량, 지연 백분위, 롤백 수, 락 타임아웃 수, 잔액 합계 보존 여부를 출력한다.
+ *
+ * 인자 (key=value)
+ * service=V4|V5|V6|V7|V8|LEDGER threads=16 accounts=1000 seconds=30 warmup=5
+ * distribution=uniform|zipfian|hot zipf=1.0 hotRatio=0.5 amount=1 lockTimeout=1000(ms)
+ * groupCommit=0(배치 크기, 0 이면 사용 안함) groupCommitLatency=5(ms)
+ */
+public class TransferLoadDriver {
+
+    private static final int INITIAL_MONEY = 1_000_000;
+
+    interface TransferCall {
+        void transfer(String fromId, String toId, int money);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String service = options.getOrDefault("service", "V5");
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        int accounts = Integer.parseInt(options.getOrDefault("accounts", "1000"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        String distributionName = options.getOrDefault("distribution", "zipfian");
+        double zipf = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        double hotRatio = Double.parseDouble(options.getOrDefault("hotRatio", "0.5"));
+        int amount = Integer.parseInt(options.getOrDefault("amount", "1"));
+        int lockTimeout = Integer.parseInt(options.getOrDefault("lockTimeout", "1000"));
+        int groupCommitSize = Integer.parseInt(options.getOrDefault("groupCommit", "0"));
+        int groupCommitLatency = Integer.parseInt(options.getOrDefault("groupCommitLatency", "5"));
+        if (accounts < 2) {
+            throw new IllegalArgumentException("accounts must be at least 2 accounts=" + accounts);
+        }
+
+        KeyDistribution distribution = KeyDistribution.of(distributionName, accounts, zipf, hotRatio);
+        try (HikariDataSource dataSource = BenchmarkDataSources.pooled("load", threads + 2, "SET LOCK_TIMEOUT " + lockTimeout)) {
+            createAccounts(dataSource, accounts);
+            MemberService memberService = createService(service, dataSource);
+            GroupCommitTransferService groupCommit = groupCommitSize > 0
+                    ? new GroupCommitTransferService(memberService, threads * groupCommitSize, groupCommitSize, Duration.ofMillis(groupCommitLatency))
+                    : null;
+            TransferCall call = groupCommit == null ? memberService::accountTransFer : groupCommitCall(groupCommit);
+            JdbcTemplate template = new JdbcTemplate(dataSource);
+            long sumBefore = sum(template);
+
+            if (warmup > 0) {
+                run(call, distribution, accounts, threads, warmup, amount);
+            }
+            long start = System.nanoTime();
+            LoadStats stats = run(call, distribution, accounts, threads, seconds, amount);
+            long elapsed = System.nanoTime() - start;
+            if (groupCommit != null) {
+                groupCommit.close();
+                System.out.println("group commit batches=" + groupCommit.getBatchCount() + " transfers=" + groupCommit.getTransferCount());
+            }
+
+            //LEDGER 는 닫을 때 남은 변경을 DB 에 반영
+            if (memberService instanceof AutoCloseable) {
+                ((AutoCloseable) memberService).close();
+            }
+            long sumAfter = sum(template);
+            report(service, distributionName, threads, accounts, elapsed, stats, sumBefore, sumAfter);
+            if (memberService instanceof MemberServiceV7) {
+                //워밍업 포함 누적
+                System.out.println("lock wait " + ((MemberServiceV7) memberService).getLockWaitMetrics());
+            }
+            if (memberService instanceof MemberServiceV8) {
+                MemberServiceV8 optimistic = (MemberServiceV8) memberService;
+                System.out.println("optimistic conflicts=" + optimistic.getConflictCount() + " exhausted=" + optimistic.getExhaustedCount());
+            }
+            if (sumBefore != sumAfter) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) {
+                throw new IllegalArgumentException("key=value 형식이 아닙니다. arg=" + arg);
+            }
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+        return options;
+    }
+
+    private static void createAccounts(DataSource dataSource, int accounts) {
+        List<Member> members = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            members.add(new Member(accountId(i), INITIAL_MONEY));
+        }
+        new MemberRepositoryV5(dataSource).saveAll(members);
+    }
+
+    static MemberService createService(String service, DataSource dataSource) throws IOException {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        MemberRepositoryV5 memberRepository = new MemberRepositoryV5(dataSource);
+        switch (service) {
+            case "V4":
+                return TransactionalProxy.create(new MemberServiceV4(memberRepository), transactionManager);
+            case "V5":
+                return TransactionalProxy.create(new MemberServiceV5(memberRepository), transactionManager);
+            case "V6":
+                return new MemberServiceV6(dataSource);
+            case "V7":
+                return TransactionalProxy.create(new MemberServiceV7(memberRepository), transactionManager);
+            case "V8":
+                return new MemberServiceV8(transactionManager, memberRepository);
+            case "LEDGER":
+                return new LedgerMemberService(dataSource, memberRepository, Files.createTempFile("ledger", ".journal"));
+            default:
+                throw new IllegalArgumentException("unknown service=" + service);
+        }
+    }
+
+    /**
+     * 요청 스레드는 결과가 나올 때까지 기다린다. (동기 호출과 같은 조건으로 지연 측정)
+     */
+    private static TransferCall groupCommitCall(GroupCommitTransferService groupCommit) {
+        return (fromId, toId, money) -> {
+            TransferResult result = groupCommit.submit(fromId, toId, money).join();
+            if (!result.isSuccess()) {
+                throw result.getError();
+            }
+        };
+    }
+
+    private static LoadStats run(TransferCall call, KeyDistribution distribution, int accounts,
+                                 int threads, int seconds, int amount) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<LoadStats> statsList = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            LoadStats stats = new LoadStats();
+            statsList.add(stats);
+            Thread worker = new Thread(() -> work(call, distribution, accounts, amount, deadline, stats), "load-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return LoadStats.merge(statsList);
+    }
+
+    private static void work(TransferCall call, KeyDistribution distribution, int accounts,
+                             int amount, long deadline, LoadStats stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int from = distribution.next(random);
+            int to = distribution.next(random);
+            //같은 계좌면 다른 계좌 중 균등하게
+            if (from == to) {
+                to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+            }
+            long start = System.nanoTime();
+            try {
+                call.transfer(accountId(from), accountId(to), amount);
+                stats.success(System.nanoTime() - start);
+            } catch (Exception e) {
+                stats.failure(System.nanoTime() - start, e);
+            }
+        }
+    }
+
+    private static long sum(JdbcTemplate template) {
+        return template.queryForObject("select coalesce(sum(money), 0) from member", Long.class);
+    }
+
+    private static String accountId(int index) {
+        return "acc" + index;
+    }
+
+    private static void report(String service, String distribution, int threads, int accounts, long elapsedNanos,
+                               LoadStats stats, long sumBefore, long sumAfter) {
+        double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("service=%s distribution=%s threads=%d accounts=%d elapsed=%.1fs%n",
+                service, distribution, threads, accounts, elapsedSeconds);
+        System.out.printf("transfers=%d success=%d rollback=%d lockTimeout=%d%n",
+                stats.getCount(), stats.getSuccess(), stats.getRollback(), stats.getLockTimeout());
+        System.out.printf("throughput=%.1f tx/s (committed %.1f tx/s)%n",
+                stats.getCount() / elapsedSeconds, stats.getSuccess() / elapsedSeconds);
+        System.out.printf("latency(us) p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                micros(stats.percentileNanos(50)), micros(stats.percentileNanos(90)),
+                micros(stats.percentileNanos(99)), micros(stats.percentileNanos(99.9)),
+                micros(stats.percentileNanos(100)));
+        System.out.printf("sum before=%d after=%d conserved=%s%n", sumBefore, sumAfter, sumBefore == sumAfter);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
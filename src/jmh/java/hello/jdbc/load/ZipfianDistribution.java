@@ -0,0 +1,35 @@
+package hello.jdbc.load;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf 분포
+ * 누적 확률표를 미리 만들어두고 이진 탐색으로 뽑는다.
+ */
+public class ZipfianDistribution implements KeyDistribution {
+
+    private final double[] cumulative;
+
+    public ZipfianDistribution(int accountCount, double exponent) {
+        if (accountCount < 1) {
+            throw new IllegalArgumentException("accountCount must be positive accountCount=" + accountCount);
+        }
+        cumulative = new double[accountCount];
+        double sum = 0;
+        for (int rank = 1; rank <= accountCount; rank++) {
+            sum += 1.0 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < accountCount; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    @Override
+    public int next(ThreadLocalRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        //없으면 -(삽입 위치) - 1
+        return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,78 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.BenchmarkDataSources;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQLException => DataAccessException 변환 비용 비교
+ *
+ * spring : SQLErrorCodeSQLExceptionTranslator, 한번 만들어두고 재사용 (JdbcTemplate 기본)
+ * springPerInstance : 변환할 때마다 새로 생성 (repository 인스턴스마다 만드는 경우의 최악)
+ * errorCode : ErrorCodeTranslator, int 코드표 이진 탐색
+ *
+ * errorCode 는 h2 에러 코드 (23505 키 중복, 50200 락 타임아웃, 42122 문법 오류, 1 은 코드표에 없어서 SQLState 로 변환)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExceptionTranslatorBenchmark {
+
+    @Param({"23505", "50200", "42122", "1"})
+    public int errorCode;
+
+    private HikariDataSource dataSource;
+    private SQLErrorCodeSQLExceptionTranslator springTranslator;
+    private ErrorCodeTranslator errorCodeTranslator;
+    private SQLException exception;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.pooled("translator", 2);
+        springTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        errorCodeTranslator = ErrorCodeTranslator.of(dataSource);
+        exception = new SQLException("benchmark", "42000", errorCode);
+        //스프링 변환기의 메타데이터 조회는 측정에서 제외
+        springTranslator.translate("warmup", null, exception);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public DataAccessException spring() {
+        return springTranslator.translate("task", "sql", exception);
+    }
+
+    @Benchmark
+    public DataAccessException springPerInstance() {
+        return new SQLErrorCodeSQLExceptionTranslator(dataSource).translate("task", "sql", exception);
+    }
+
+    @Benchmark
+    public DataAccessException errorCode() {
+        return errorCodeTranslator.translate("task", "sql", exception);
+    }
+}
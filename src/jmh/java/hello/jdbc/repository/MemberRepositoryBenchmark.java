@@ -0,0 +1,178 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.BenchmarkDataSources;
+import hello.jdbc.domain.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MemberRepositoryV0 ~ V5 CRUD 비용 비교 (인메모리 H2)
+ *
+ * V0 : 호출마다 새 커넥션 (V1 + DriverManagerDataSource, V0 는 ConnectionConst.URL TCP 서버 고정이라 같은 방식으로 대체)
+ * V1 : DataSource(커넥션 풀)
+ * V3 : DataSourceUtils 트랜잭션 동기화
+ * V4_2 : SQLExceptionTranslator
+ * V5 : JdbcTemplate
+ *
+ * Throughput + SampleTime(p0.99 등 백분위) 두 모드로 측정, ./gradlew jmh 는 -prof gc 로 할당량도 출력한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberRepositoryBenchmark {
+
+    private static final int MEMBER_COUNT = 1000;
+
+    @Param({"V0", "V1", "V3", "V4_2", "V5"})
+    public String version;
+
+    private HikariDataSource pooled;
+    private RepositoryOps ops;
+    //saveAndDelete 키 (member_id varchar(10))
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 버전마다 메서드 시그니처(체크 예외 여부)가 달라서 같은 모양으로 맞춘다.
+     */
+    interface RepositoryOps {
+        void save(Member member) throws SQLException;
+
+        Member findById(String memberId) throws SQLException;
+
+        void update(String memberId, int money) throws SQLException;
+
+        void delete(String memberId) throws SQLException;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String name = "repository" + version;
+        pooled = BenchmarkDataSources.pooled(name, 10);
+        ops = createOps(name);
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            members.add(new Member(memberId(i), 10000));
+        }
+        new MemberRepositoryV5(pooled).saveAll(members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pooled.close();
+    }
+
+    private RepositoryOps createOps(String name) {
+        switch (version) {
+            case "V0": {
+                MemberRepositoryV1 repository = new MemberRepositoryV1(BenchmarkDataSources.driverManager(name));
+                return ops(repository::save, repository::findById, repository::update, repository::delete);
+            }
+            case "V1": {
+                MemberRepositoryV1 repository = new MemberRepositoryV1(pooled);
+                return ops(repository::save, repository::findById, repository::update, repository::delete);
+            }
+            case "V3": {
+                MemberRepositoryV3 repository = new MemberRepositoryV3(pooled);
+                return ops(repository::save, repository::findById, repository::update, repository::delete);
+            }
+            case "V4_2":
+                return ops(new MemberRepositoryV4_2(pooled));
+            case "V5":
+                return ops(new MemberRepositoryV5(pooled));
+            default:
+                throw new IllegalArgumentException("unknown version=" + version);
+        }
+    }
+
+    private static RepositoryOps ops(MemberRepository repository) {
+        return ops(repository::save, repository::findById, repository::update, repository::delete);
+    }
+
+    private static RepositoryOps ops(SaveOp save, FindOp find, UpdateOp update, DeleteOp delete) {
+        return new RepositoryOps() {
+            @Override
+            public void save(Member member) throws SQLException {
+                save.save(member);
+            }
+
+            @Override
+            public Member findById(String memberId) throws SQLException {
+                return find.findById(memberId);
+            }
+
+            @Override
+            public void update(String memberId, int money) throws SQLException {
+                update.update(memberId, money);
+            }
+
+            @Override
+            public void delete(String memberId) throws SQLException {
+                delete.delete(memberId);
+            }
+        };
+    }
+
+    interface SaveOp {
+        Object save(Member member) throws SQLException;
+    }
+
+    interface FindOp {
+        Member findById(String memberId) throws SQLException;
+    }
+
+    interface UpdateOp {
+        void update(String memberId, int money) throws SQLException;
+    }
+
+    interface DeleteOp {
+        void delete(String memberId) throws SQLException;
+    }
+
+    private static String memberId(int i) {
+        return "bench" + i;
+    }
+
+    private static String randomMemberId() {
+        return memberId(ThreadLocalRandom.current().nextInt(MEMBER_COUNT));
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return ops.findById(randomMemberId());
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        ops.update(randomMemberId(), ThreadLocalRandom.current().nextInt(10000));
+    }
+
+    @Benchmark
+    public void saveAndDelete() throws SQLException {
+        String memberId = "n" + (sequence.incrementAndGet() % 1_000_000_000L);
+        ops.save(new Member(memberId, 10000));
+        ops.delete(memberId);
+    }
+}
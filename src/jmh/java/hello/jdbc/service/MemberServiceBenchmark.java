@@ -0,0 +1,138 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.BenchmarkDataSources;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.repository.MemberRepositoryV2;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 이체 서비스 버전별 트랜잭션 처리 비용 비교 (인메모리 H2 + Hikari)
+ *
+ * V1 : 트랜잭션 없음
+ * V2 : 커넥션 파라미터 전달
+ * V3_1 : PlatformTransactionManager
+ * V3_2 : TransactionTemplate
+ * V3_3, V4, V5 : @Transactional 프록시 (TransactionalProxy, 스프링 컨테이너와 같은 TransactionInterceptor)
+ * V6 : H2 TRANSFER 함수 CALL
+ *
+ * 스레드마다 자기 계좌 두개를 번갈아 이체하기 때문에 락 경합 없이 순수 처리 비용만 측정한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberServiceBenchmark {
+
+    @Param({"V1", "V2", "V3_1", "V3_2", "V3_3", "V4", "V5", "V6"})
+    public String version;
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 memberRepository;
+    private TransferOp transferOp;
+    private final AtomicInteger threadSequence = new AtomicInteger();
+
+    interface TransferOp {
+        void transfer(String fromId, String toId, int money) throws Exception;
+    }
+
+    /**
+     * 스레드별 계좌
+     */
+    @State(Scope.Thread)
+    public static class Accounts {
+        private String memberA;
+        private String memberB;
+        private boolean reverse;
+
+        @Setup(Level.Trial)
+        public void setUp(MemberServiceBenchmark benchmark) {
+            int index = benchmark.threadSequence.incrementAndGet();
+            memberA = "a" + index;
+            memberB = "b" + index;
+            benchmark.memberRepository.save(new Member(memberA, 1_000_000_000));
+            benchmark.memberRepository.save(new Member(memberB, 1_000_000_000));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.pooled("service" + version, 10);
+        memberRepository = new MemberRepositoryV5(dataSource);
+        transferOp = createTransferOp();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    private TransferOp createTransferOp() {
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        switch (version) {
+            case "V1":
+                return new MemberServiceV1(new MemberRepositoryV1(dataSource))::accountTransFer;
+            case "V2":
+                return new MemberServiceV2(dataSource, new MemberRepositoryV2(dataSource))::accountTransFer;
+            case "V3_1":
+                return new MemberServiceV3_1(transactionManager, new MemberRepositoryV3(dataSource))::accountTransFer;
+            case "V3_2":
+                return new MemberServiceV3_2(transactionManager, new MemberRepositoryV3(dataSource))::accountTransFer;
+            case "V3_3":
+                return TransactionalProxy.create(new MemberServiceV3_3(new MemberRepositoryV3(dataSource)), transactionManager)::accountTransFer;
+            case "V4":
+                return TransactionalProxy.create(new MemberServiceV4(memberRepository), transactionManager)::accountTransFer;
+            case "V5":
+                return TransactionalProxy.create(new MemberServiceV5(memberRepository), transactionManager)::accountTransFer;
+            case "V6":
+                return new MemberServiceV6(dataSource)::accountTransFer;
+            default:
+                throw new IllegalArgumentException("unknown version=" + version);
+        }
+    }
+
+    private void transfer(Accounts accounts) throws Exception {
+        //방향을 번갈아 바꿔서 잔액 유지
+        accounts.reverse = !accounts.reverse;
+        if (accounts.reverse) {
+            transferOp.transfer(accounts.memberA, accounts.memberB, 1);
+        } else {
+            transferOp.transfer(accounts.memberB, accounts.memberA, 1);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transferSingleThread(Accounts accounts) throws Exception {
+        transfer(accounts);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void transferFourThreads(Accounts accounts) throws Exception {
+        transfer(accounts);
+    }
+}
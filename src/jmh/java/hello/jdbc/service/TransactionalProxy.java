@@ -0,0 +1,21 @@
+package hello.jdbc.service;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+/**
+ * 스프링 컨테이너 없이 @Transactional 프록시(CGLIB) 생성
+ * 컨테이너와 같은 TransactionInterceptor + AnnotationTransactionAttributeSource 를 사용한다.
+ */
+public abstract class TransactionalProxy {
+
+    @SuppressWarnings("unchecked")
+    public static <T> T create(T target, PlatformTransactionManager transactionManager) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+        return (T) proxyFactory.getProxy();
+    }
+}
@@ -0,0 +1,2 @@
+--벤치마크 trial 마다 빈 테이블에서 시작, 테이블 정의는 schema.sql
+drop table if exists member cascade;
@@ -0,0 +1,302 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 물리 커넥션별 PreparedStatement 캐시
+ *
+ * con.prepareStatement(sql) 는 캐시된 statement 를 돌려주고, pstmt.close() 는 실제로 닫지 않고 캐시에 반납한다.
+ * 리포지토리 코드는 그대로 두고 DataSource 만 감싸서 사용한다.
+ * 주의! 트랜잭션 동기화를 사용하려면 트랜잭션 매니저에도 같은 StatementCachingDataSource 를 넘겨야 한다.
+ *
+ * statement 는 풀 커넥션 프록시가 아니라 물리 커넥션에서 만든다. (풀은 커넥션 반환 시 열린 statement 를 닫기 때문)
+ * 물리 커넥션이 닫히면 그 캐시를 버린다.
+ * 풀이 없으면 커넥션 close() 때 바로, 풀이 물리 커넥션을 교체하면 새 물리 커넥션이 처음 들어올 때 닫힌 것을 정리한다.
+ *
+ * 주의! 그래서 prepareStatement(String) 로 만든 statement 는 풀(Hikari) 프록시를 거치지 않는다.
+ * - 풀은 이 statement 를 모르므로 커넥션 반환 시 닫아주지 않는다. 사용한 statement 는 반드시 close() 해야 한다.
+ * - 풀은 statement 실행을 보지 못해서 커밋 안 된 변경이 있는지(dirty) 모른다.
+ *   autoCommit=false 로 쓰고 커밋/롤백 없이 반환해도 풀이 롤백해주지 않으므로 트랜잭션은 직접(트랜잭션 매니저로) 끝내야 한다.
+ * - setFetchSize, setMaxRows, setQueryTimeout 같은 statement 설정은 초기화하지 않고 다음 사용자에게 그대로 넘어간다.
+ */
+@Slf4j
+public class StatementCachingDataSource extends DelegatingDataSource {
+
+    public static final int DEFAULT_CACHE_SIZE = 32;
+
+    private final int cacheSize;
+    //물리 커넥션 => LRU 캐시
+    //statement 가 커넥션을 참조하기 때문에 WeakHashMap 으로는 정리되지 않는다. 닫힌 커넥션은 직접 제거
+    private final Map<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public StatementCachingDataSource(DataSource targetDataSource) {
+        this(targetDataSource, DEFAULT_CACHE_SIZE);
+    }
+
+    public StatementCachingDataSource(DataSource targetDataSource, int cacheSize) {
+        super(targetDataSource);
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be positive cacheSize=" + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 캐시를 가지고 있는 물리 커넥션 수
+     */
+    public int getCachedConnectionCount() {
+        return caches.size();
+    }
+
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private Connection wrap(Connection con) throws SQLException {
+        //풀 프록시 커넥션이면 물리 커넥션을 꺼낸다.
+        Connection physical = con.isWrapperFor(Connection.class) ? con.unwrap(Connection.class) : con;
+        StatementCache cache = caches.get(physical);
+        if (cache == null) {
+            //새 물리 커넥션 => 풀이 닫은 물리 커넥션이 있을 수 있다.
+            removeClosed();
+            cache = caches.computeIfAbsent(physical, key -> new StatementCache());
+        }
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionProxy.class.getClassLoader(),
+                new Class<?>[]{ConnectionProxy.class},
+                new CachingConnectionHandler(con, physical, cache));
+    }
+
+    private void removeClosed() {
+        caches.keySet().removeIf(physical -> {
+            try {
+                return physical.isClosed();
+            } catch (SQLException e) {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 커넥션 프록시
+     * prepareStatement(String) 만 캐시를 사용하고 나머지는 그대로 위임한다.
+     */
+    private class CachingConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final Connection physical;
+        private final StatementCache cache;
+
+        CachingConnectionHandler(Connection target, Connection physical, StatementCache cache) {
+            this.target = target;
+            this.physical = physical;
+            this.cache = cache;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Statement-caching proxy for target Connection [" + target + "]";
+                case "getTargetConnection":
+                    return target;
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return cache.checkout((Connection) proxy, physical, (String) args[0]);
+                    }
+                    break;
+                case "close":
+                    //풀이 없으면 물리 커넥션이 닫힌다. statement 도 같이 닫히므로 캐시를 버린다.
+                    if (target == physical) {
+                        caches.remove(physical, cache);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    /**
+     * 물리 커넥션 하나의 LRU 캐시
+     * 물리 커넥션은 한 시점에 하나의 스레드만 사용하기 때문에 별도 동기화하지 않는다.
+     */
+    private class StatementCache {
+
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= cacheSize) {
+                    return false;
+                }
+                evictionCount.increment();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+
+        PreparedStatement checkout(Connection connectionProxy, Connection physical, String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && !cached.inUse && !cached.statement.isClosed()) {
+                hitCount.increment();
+                cached.inUse = true;
+                return cached.handle(connectionProxy);
+            }
+            missCount.increment();
+            PreparedStatement statement = physical.prepareStatement(sql);
+            if (cached != null && cached.inUse) {
+                //같은 sql 을 동시에 열어둔 경우 : 캐시하지 않고 일반 statement 로 사용
+                return statement;
+            }
+            CachedStatement newCached = new CachedStatement(statement);
+            newCached.inUse = true;
+            statements.put(sql, newCached);
+            return newCached.handle(connectionProxy);
+        }
+    }
+
+    private static class CachedStatement {
+
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        /**
+         * 사용 중에 밀려난 statement 는 반납할 때 닫는다.
+         */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        PreparedStatement handle(Connection connectionProxy) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCachingDataSource.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new StatementHandler(this, connectionProxy));
+        }
+
+        void release() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.info("error", e);
+            }
+        }
+    }
+
+    /**
+     * statement 프록시, close() 는 캐시에 반납
+     */
+    private static class StatementHandler implements InvocationHandler {
+
+        private final CachedStatement cached;
+        private final Connection connectionProxy;
+        private boolean closed;
+
+        StatementHandler(CachedStatement cached, Connection connectionProxy) {
+            this.cached = cached;
+            this.connectionProxy = connectionProxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached statement [" + cached.statement + "]";
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cached.release();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return connectionProxy;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package hello.jdbc.domain;
+
+import lombok.Data;
+
+/**
+ * 이체 한 건 (정산 파일의 한 줄)
+ */
+@Data
+public class Transfer {
+
+    private final String fromId;
+    private final String toId;
+    private final int money;
+}
@@ -0,0 +1,289 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.bloom.ScalableBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 없는 회원 조회를 DB 까지 보내지 않는 MemberRepository 데코레이터
+ *
+ * 시작할 때 member 테이블의 member_id 를 전부 읽어 ScalableBloomFilter 를 만든다.
+ * filter 에 없는 memberId 는 확실히 없는 회원 => 쿼리 없이 바로 NoSuchElementException, Optional.empty(), 0건
+ *
+ * save 는 insert 전에 filter 에 넣는다. (먼저 넣으면 커밋 전까지 오탐일 뿐, 없는 회원으로 잘못 판단하는 일은 없다)
+ * Bloom filter 는 삭제가 안 되기 때문에 delete 는 커밋 후 개수만 세고, 삭제가 쌓이면 rebuild() 로 다시 만든다.
+ *
+ * 주의! filter 는 이 인스턴스를 거친 save 만 안다. 다른 인스턴스, 직접 실행한 SQL, 다른 애플리케이션처럼
+ * 이 리포지토리 밖에서 insert 된 회원은 rebuild() 전까지 없는 회원으로 판단된다.
+ * member 테이블에 insert 하는 경로가 이 리포지토리 하나일 때만 사용한다.
+ */
+@Slf4j
+public class BloomFilterMemberRepository implements MemberRepository {
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    //테이블이 비어있을 때의 처음 용량
+    private static final long MIN_CAPACITY = 1024;
+
+    private final MemberRepository delegate;
+    private final JdbcTemplate scanTemplate;
+    private final double falsePositiveRate;
+    private volatile ScalableBloomFilter filter;
+    //rebuild() 중에 저장된 memberId 는 새 filter 에도 넣는다.
+    private volatile ScalableBloomFilter rebuilding;
+
+    //filter 로 쿼리 없이 끝낸 조회 수
+    private final LongAdder filteredCount = new LongAdder();
+    //filter 를 통과했지만 DB 에 없던 조회 수 (오탐)
+    private final LongAdder falsePositiveCount = new LongAdder();
+    //filter 를 통과해서 DB 에서 찾은 조회 수
+    private final LongAdder foundCount = new LongAdder();
+    private final LongAdder deletedSinceRebuild = new LongAdder();
+
+    public BloomFilterMemberRepository(MemberRepository delegate, DataSource dataSource) {
+        this(delegate, dataSource, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    public BloomFilterMemberRepository(MemberRepository delegate, DataSource dataSource, double falsePositiveRate) {
+        this.delegate = delegate;
+        this.scanTemplate = new JdbcTemplate(dataSource);
+        this.scanTemplate.setFetchSize(MemberRepositoryV5.STREAM_FETCH_SIZE);
+        this.falsePositiveRate = falsePositiveRate;
+        load();
+    }
+
+    /**
+     * member 테이블을 다시 읽어서 filter 교체, 삭제된 memberId 가 빠진다.
+     */
+    public synchronized void rebuild() {
+        long deleted = deletedSinceRebuild.sumThenReset();
+        load();
+        log.info("bloom filter rebuilt count={}, deletedSinceRebuild={}", filter.getCount(), deleted);
+    }
+
+    private void load() {
+        Long rowCount = scanTemplate.queryForObject("select count(*) from member", Long.class);
+        ScalableBloomFilter loading = new ScalableBloomFilter(Math.max(MIN_CAPACITY, rowCount), falsePositiveRate);
+        //스캔 전에 공개해야 스캔과 동시에 커밋되는 save 가 빠지지 않는다. (addAfterCommit)
+        rebuilding = loading;
+        try {
+            scanTemplate.query("select member_id from member", rs -> {
+                loading.add(rs.getString(1));
+            });
+            filter = loading;
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    /**
+     * false 이면 확실히 없는 memberId
+     */
+    public boolean mightExist(String memberId) {
+        return filter.mightContain(memberId);
+    }
+
+    public long getFilteredCount() {
+        return filteredCount.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.sum();
+    }
+
+    public long getFoundCount() {
+        return foundCount.sum();
+    }
+
+    /**
+     * 실제로 관찰한 오탐률 = 오탐 / 없는 회원 조회 수
+     */
+    public double getObservedFalsePositiveRate() {
+        long falsePositives = falsePositiveCount.sum();
+        long negatives = falsePositives + filteredCount.sum();
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+
+    /**
+     * filter 가 채워진 정도로 계산한 오탐률
+     */
+    public double getExpectedFalsePositiveRate() {
+        return filter.getExpectedFalsePositiveRate();
+    }
+
+    /**
+     * 마지막 rebuild() 이후 커밋된 delete 수, filter 에는 남아있어서 오탐이 된다.
+     */
+    public long getDeletedSinceRebuild() {
+        return deletedSinceRebuild.sum();
+    }
+
+    @Override
+    public Member save(Member member) {
+        add(member.getMemberId());
+        Member saved = delegate.save(member);
+        addAfterCommit(List.of(member.getMemberId()));
+        return saved;
+    }
+
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        add(member.getMemberId());
+        boolean saved = delegate.saveIfAbsent(member);
+        if (saved) {
+            addAfterCommit(List.of(member.getMemberId()));
+        }
+        return saved;
+    }
+
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        List<String> memberIds = new ArrayList<>(members.size());
+        for (Member member : members) {
+            add(member.getMemberId());
+            memberIds.add(member.getMemberId());
+        }
+        SaveAllResult result = delegate.saveAll(members);
+        addAfterCommit(memberIds);
+        return result;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (!mightExistOrCount(memberId)) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        try {
+            Member member = delegate.findById(memberId);
+            foundCount.increment();
+            return member;
+        } catch (NoSuchElementException | EmptyResultDataAccessException e) {
+            falsePositiveCount.increment();
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        if (!mightExistOrCount(memberId)) {
+            return Optional.empty();
+        }
+        Optional<Member> member = delegate.findOptionalById(memberId);
+        if (member.isPresent()) {
+            foundCount.increment();
+        } else {
+            falsePositiveCount.increment();
+        }
+        return member;
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        if (!mightExistOrCount(memberId)) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        List<String> candidates = new ArrayList<>(memberIds.size());
+        for (String memberId : memberIds) {
+            if (mightExistOrCount(memberId)) {
+                candidates.add(memberId);
+            }
+        }
+        Map<String, Member> result = delegate.findAllById(candidates);
+        foundCount.add(result.size());
+        falsePositiveCount.add(InClauseSupport.missingIds(candidates, result).size());
+        return result;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        //없는 회원의 update 는 원래도 0건
+        if (mightExistOrCount(memberId)) {
+            delegate.update(memberId, money);
+        }
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        //실패 예외 종류는 delegate 를 따른다.
+        delegate.updateWithVersion(memberId, money, version);
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        return mightExistOrCount(memberId) ? delegate.addMoney(memberId, delta) : 0;
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        return mightExistOrCount(memberId) ? delegate.withdrawIfSufficient(memberId, amount) : 0;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deletedSinceRebuild.increment();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deletedSinceRebuild.increment();
+            }
+        });
+    }
+
+    private boolean mightExistOrCount(String memberId) {
+        if (filter.mightContain(memberId)) {
+            return true;
+        }
+        filteredCount.increment();
+        return false;
+    }
+
+    /**
+     * rebuilding 을 filter 보다 먼저 읽는다. load() 는 filter 교체 후 rebuilding 을 비우므로
+     * rebuilding 이 null 이면 filter 는 이미 새 filter 이거나 스캔이 아직 시작되지 않은 것이다.
+     * (반대 순서면 이전 filter 에만 넣고 새 filter 에서 빠질 수 있다)
+     */
+    private void add(String memberId) {
+        ScalableBloomFilter loading = rebuilding;
+        filter.add(memberId);
+        if (loading != null) {
+            loading.add(memberId);
+        }
+    }
+
+    /**
+     * insert 전에 넣은 filter 가 그 사이 rebuild() 로 바뀌었을 수 있으므로 커밋 후 다시 넣는다. (여러 번 넣어도 같다)
+     */
+    private void addAfterCommit(List<String> memberIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            memberIds.forEach(this::add);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                memberIds.forEach(BloomFilterMemberRepository.this::add);
+            }
+        });
+    }
+}
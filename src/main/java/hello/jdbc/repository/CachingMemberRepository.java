@@ -0,0 +1,216 @@
+package hello.jdbc.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 조회 캐시 데코레이터 (read-through)
+ * Caffeine(W-TinyLFU) 로 크기 제한 + 사용 빈도 기반 제거 + TTL
+ *
+ * 트랜잭션 안에서는 캐시를 사용하지 않는다. (커밋 전 값이 캐시에 들어가는 것 방지)
+ * update/delete 는 커밋 이후에만 캐시에서 제거하고, 롤백되면 캐시를 건드리지 않는다.
+ *
+ * findAllById 는 없는 회원을 한번에 조회한다. Caffeine getAll 의 bulk 로딩은 invalidate 와 원자적이지 않아서
+ * 로딩 중에 제거된 회원의 이전 값이 캐시에 들어갈 수 있으므로, 제거 횟수(generation)가 로딩 전과 같을 때만 넣는다.
+ */
+@Slf4j
+public class CachingMemberRepository implements MemberRepository {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+    //generation 을 memberId 해시로 나눠 관리하는 칸 수 (2의 거듭제곱), 같은 칸의 다른 회원이 제거되면 넣지 않을 뿐이다.
+    private static final int GENERATION_STRIPES = 64;
+
+    private final MemberRepository delegate;
+    private final Cache<String, Member> cache;
+    //칸별 캐시 제거 횟수
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public CachingMemberRepository(MemberRepository delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL);
+    }
+
+    public CachingMemberRepository(MemberRepository delegate, long maximumSize, Duration ttl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = delegate.save(member);
+        evictAfterCommit(member.getMemberId());
+        return saved;
+    }
+
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        boolean saved = delegate.saveIfAbsent(member);
+        if (saved) {
+            evictAfterCommit(member.getMemberId());
+        }
+        return saved;
+    }
+
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        SaveAllResult result = delegate.saveAll(members);
+        for (Member member : members) {
+            evictAfterCommit(member.getMemberId());
+        }
+        return result;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findById(memberId);
+        }
+        //같은 키의 로딩과 invalidate 는 Caffeine 이 순서를 보장한다. 없는 회원(NoSuchElementException)은 캐시하지 않는다.
+        return copy(cache.get(memberId, delegate::findById));
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findOptionalById(memberId);
+        }
+        //loader 가 null 을 반환하면 캐시하지 않는다.
+        Member member = cache.get(memberId, id -> delegate.findOptionalById(id).orElse(null));
+        return Optional.ofNullable(member).map(this::copy);
+    }
+
+    /**
+     * 락 조회는 항상 DB
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findAllById(memberIds);
+        }
+        Map<String, Member> result = new HashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        for (String memberId : memberIds) {
+            Member member = cache.getIfPresent(memberId);
+            if (member != null) {
+                result.put(memberId, copy(member));
+            } else {
+                missingIds.add(memberId);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return result;
+        }
+
+        //조회 전에 generation 을 읽어둔다.
+        long[] loadedGenerations = new long[missingIds.size()];
+        for (int i = 0; i < missingIds.size(); i++) {
+            loadedGenerations[i] = generations.get(stripe(missingIds.get(i)));
+        }
+        Map<String, Member> loaded = delegate.findAllById(missingIds);
+        for (int i = 0; i < missingIds.size(); i++) {
+            String memberId = missingIds.get(i);
+            Member member = loaded.get(memberId);
+            if (member == null) {
+                continue;
+            }
+            result.put(memberId, copy(member));
+            //같은 키의 compute 와 invalidate 는 순서가 보장되므로 확인과 넣기가 원자적이다.
+            long generation = loadedGenerations[i];
+            cache.asMap().computeIfAbsent(memberId, id -> generations.get(stripe(id)) == generation ? member : null);
+        }
+        return result;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        delegate.update(memberId, money);
+        evictAfterCommit(memberId);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        delegate.updateWithVersion(memberId, money, version);
+        evictAfterCommit(memberId);
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        int updated = delegate.addMoney(memberId, delta);
+        evictAfterCommit(memberId);
+        return updated;
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        int updated = delegate.withdrawIfSufficient(memberId, amount);
+        evictAfterCommit(memberId);
+        return updated;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+        evictAfterCommit(memberId);
+    }
+
+    /**
+     * 트랜잭션 중이면 커밋된 다음에 제거, 아니면 바로 제거
+     */
+    private void evictAfterCommit(String memberId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(memberId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(memberId);
+            }
+        });
+    }
+
+    /**
+     * generation 을 먼저 올려야 진행 중인 findAllById 가 이전 값을 넣지 않는다.
+     */
+    private void evict(String memberId) {
+        generations.incrementAndGet(stripe(memberId));
+        cache.invalidate(memberId);
+    }
+
+    private static int stripe(String memberId) {
+        int h = memberId.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    //캐시에 들어있는 객체는 호출자가 수정하지 못하도록 복사해서 반환
+    private Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
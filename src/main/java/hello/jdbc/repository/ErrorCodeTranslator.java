@@ -0,0 +1,232 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.repository.ex.MyDbException;
+import hello.jdbc.repository.ex.MyDuplicateKeyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.InvalidResultSetAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.support.SQLErrorCodes;
+import org.springframework.jdbc.support.SQLErrorCodesFactory;
+import org.springframework.jdbc.support.SQLExceptionSubclassTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 에러 코드 기반 예외 변환기
+ *
+ * SQLErrorCodeSQLExceptionTranslator 는 처음 변환할 때 DB 메타데이터를 읽고, 변환마다 문자열 코드 배열을 차례로 비교한다.
+ * 여기서는 벤더별 코드표(sql-error-codes.xml, SQLErrorCodes)를 한번 정렬된 int 배열로 만들어두고 이진 탐색한다.
+ * DataSource 마다 하나만 만든다. (of) 코드표는 생성할 때가 아니라 처음 변환할 때 DB 메타데이터로 읽고,
+ * DB 에 접속하지 못해서 코드표를 못 읽었으면 다음 변환에서 다시 읽는다. (DB 장애 중에 만든 리포지토리도 복구된다)
+ *
+ * 코드표에 없는 에러 코드는 스프링과 같은 SQLExceptionSubclassTranslator(SQLState 기반)로 넘긴다.
+ */
+@Slf4j
+public class ErrorCodeTranslator implements SQLExceptionTranslator {
+
+    //분류 번호 = 검사 순서 (SQLErrorCodeSQLExceptionTranslator 와 같은 순서)
+    private static final int BAD_SQL_GRAMMAR = 1;
+    private static final int INVALID_RESULT_SET_ACCESS = 2;
+    private static final int DUPLICATE_KEY = 3;
+    private static final int DATA_INTEGRITY_VIOLATION = 4;
+    private static final int PERMISSION_DENIED = 5;
+    private static final int DATA_ACCESS_RESOURCE_FAILURE = 6;
+    private static final int TRANSIENT_DATA_ACCESS_RESOURCE = 7;
+    private static final int CANNOT_ACQUIRE_LOCK = 8;
+    private static final int DEADLOCK_LOSER = 9;
+    private static final int CANNOT_SERIALIZE_TRANSACTION = 10;
+
+    //DataSource 가 GC 되면 같이 제거
+    private static final Map<DataSource, ErrorCodeTranslator> translators =
+            new ConcurrentReferenceHashMap<>(16, ConcurrentReferenceHashMap.ReferenceType.WEAK);
+
+    private static final CodeTable EMPTY = new CodeTable(new int[0], new byte[0]);
+
+    private final SQLExceptionTranslator fallback = new SQLExceptionSubclassTranslator();
+    private volatile CodeTable table;
+    //코드표를 아직 읽지 못했으면 읽을 DataSource, 읽은 다음에는 null
+    private volatile DataSource unresolvedDataSource;
+
+    /**
+     * 정렬된 에러 코드, categories[i] 는 codes[i] 의 분류
+     */
+    private static final class CodeTable {
+        private final int[] codes;
+        private final byte[] categories;
+
+        private CodeTable(int[] codes, byte[] categories) {
+            this.codes = codes;
+            this.categories = categories;
+        }
+    }
+
+    /**
+     * DataSource 의 벤더 코드표로 만드는 변환기, 여기서는 DB 에 접속하지 않는다.
+     */
+    public static ErrorCodeTranslator of(DataSource dataSource) {
+        ErrorCodeTranslator translator = translators.get(dataSource);
+        if (translator != null) {
+            return translator;
+        }
+        translator = new ErrorCodeTranslator(dataSource);
+        ErrorCodeTranslator existing = translators.putIfAbsent(dataSource, translator);
+        return existing != null ? existing : translator;
+    }
+
+    private ErrorCodeTranslator(DataSource dataSource) {
+        this.table = EMPTY;
+        this.unresolvedDataSource = dataSource;
+    }
+
+    /**
+     * 벤더 코드표를 직접 지정 (다른 DB, 사용자 정의 코드)
+     */
+    public ErrorCodeTranslator(SQLErrorCodes errorCodes) {
+        this.table = build(errorCodes);
+    }
+
+    private static CodeTable build(SQLErrorCodes errorCodes) {
+        //SQLState 로 변환하는 벤더는 숫자 코드표가 없다. 전부 fallback
+        String[][] codeSets = errorCodes.isUseSqlStateForTranslation() ? new String[0][] : new String[][]{
+                errorCodes.getBadSqlGrammarCodes(),
+                errorCodes.getInvalidResultSetAccessCodes(),
+                errorCodes.getDuplicateKeyCodes(),
+                errorCodes.getDataIntegrityViolationCodes(),
+                errorCodes.getPermissionDeniedCodes(),
+                errorCodes.getDataAccessResourceFailureCodes(),
+                errorCodes.getTransientDataAccessResourceCodes(),
+                errorCodes.getCannotAcquireLockCodes(),
+                errorCodes.getDeadlockLoserCodes(),
+                errorCodes.getCannotSerializeTransactionCodes()};
+
+        //코드 << 8 | 분류 로 묶어서 정렬, 같은 코드가 여러 분류에 있으면 번호가 작은(먼저 검사하는) 분류
+        long[] entries = new long[Arrays.stream(codeSets).mapToInt(set -> set.length).sum()];
+        int size = 0;
+        for (int i = 0; i < codeSets.length; i++) {
+            for (String code : codeSets[i]) {
+                int errorCode;
+                try {
+                    errorCode = Integer.parseInt(code.trim());
+                } catch (NumberFormatException e) {
+                    log.debug("skip non numeric error code={}", code);
+                    continue;
+                }
+                entries[size++] = ((long) errorCode << 8) | (i + 1);
+            }
+        }
+        Arrays.sort(entries, 0, size);
+
+        int[] codes = new int[size];
+        byte[] categories = new byte[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int code = (int) (entries[i] >> 8);
+            if (count > 0 && codes[count - 1] == code) {
+                continue;
+            }
+            codes[count] = code;
+            categories[count] = (byte) (entries[i] & 0xFF);
+            count++;
+        }
+        return new CodeTable(Arrays.copyOf(codes, count), Arrays.copyOf(categories, count));
+    }
+
+    /**
+     * 아직 못 읽은 코드표는 지금 읽는다. DB 에 접속하지 못하면 SQLErrorCodesFactory 가 빈 코드표(제품명 없음)를 주므로
+     * 그때는 기록하지 않고 이번 변환만 fallback 으로 한다.
+     */
+    private CodeTable table() {
+        DataSource dataSource = unresolvedDataSource;
+        if (dataSource == null) {
+            return table;
+        }
+        SQLErrorCodes errorCodes = SQLErrorCodesFactory.getInstance().getErrorCodes(dataSource);
+        CodeTable loaded = build(errorCodes);
+        if (loaded.codes.length > 0 || errorCodes.getDatabaseProductName() != null) {
+            //table 을 먼저 써야 unresolvedDataSource == null 을 본 스레드가 읽은 코드표를 본다.
+            table = loaded;
+            unresolvedDataSource = null;
+        } else {
+            log.debug("error codes not resolved yet, fallback to SQLState");
+        }
+        return loaded;
+    }
+
+    @Override
+    public DataAccessException translate(String task, String sql, SQLException ex) {
+        SQLException sqlEx = unwrap(ex);
+        String message = task + "; " + (sql != null ? "SQL [" + sql + "]; " : "") + sqlEx.getMessage();
+        switch (category(sqlEx.getErrorCode())) {
+            case DUPLICATE_KEY:
+                return new DuplicateKeyException(message, sqlEx);
+            case DATA_INTEGRITY_VIOLATION:
+                return new DataIntegrityViolationException(message, sqlEx);
+            case BAD_SQL_GRAMMAR:
+                return new BadSqlGrammarException(task, sql != null ? sql : "", sqlEx);
+            case INVALID_RESULT_SET_ACCESS:
+                return new InvalidResultSetAccessException(task, sql != null ? sql : "", sqlEx);
+            case PERMISSION_DENIED:
+                return new PermissionDeniedDataAccessException(message, sqlEx);
+            case DATA_ACCESS_RESOURCE_FAILURE:
+                return new DataAccessResourceFailureException(message, sqlEx);
+            case TRANSIENT_DATA_ACCESS_RESOURCE:
+                return new TransientDataAccessResourceException(message, sqlEx);
+            case CANNOT_ACQUIRE_LOCK:
+                return new CannotAcquireLockException(message, sqlEx);
+            case DEADLOCK_LOSER:
+                return new DeadlockLoserDataAccessException(message, sqlEx);
+            case CANNOT_SERIALIZE_TRANSACTION:
+                return new CannotSerializeTransactionException(message, sqlEx);
+            default:
+                DataAccessException translated = fallback.translate(task, sql, sqlEx);
+                return translated != null ? translated : new UncategorizedSQLException(task, sql, sqlEx);
+        }
+    }
+
+    /**
+     * MemberRepositoryV4_1, ExTranslatorV1Test 처럼 직접 만든 예외 계층으로 변환
+     * 키 중복 => MyDuplicateKeyException, 나머지 => MyDbException
+     */
+    public MyDbException translateToMyDbException(SQLException ex) {
+        if (isDuplicateKey(ex)) {
+            return new MyDuplicateKeyException(ex);
+        }
+        return new MyDbException(ex);
+    }
+
+    public boolean isDuplicateKey(SQLException ex) {
+        return category(unwrap(ex).getErrorCode()) == DUPLICATE_KEY;
+    }
+
+    private int category(int errorCode) {
+        CodeTable table = table();
+        int index = Arrays.binarySearch(table.codes, errorCode);
+        return index >= 0 ? table.categories[index] : 0;
+    }
+
+    /**
+     * batch 실패는 원인 예외에 실제 에러 코드가 있다. (스프링과 같은 처리)
+     */
+    private static SQLException unwrap(SQLException ex) {
+        if (ex instanceof BatchUpdateException && ex.getNextException() != null) {
+            return ex.getNextException();
+        }
+        return ex;
+    }
+}
@@ -0,0 +1,101 @@
+package hello.jdbc.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * hi/lo 방식 memberId 발급
+ *
+ * 시퀀스(member_id_seq)에서 hi 하나를 받으면 hi * blockSize ~ hi * blockSize + blockSize - 1 을 메모리에서 나눠준다.
+ * DB 호출은 blockSize 건마다 한번, 시퀀스는 롤백되지 않으므로 여러 인스턴스(JVM)가 같은 시퀀스를 써도 겹치지 않는다.
+ * 재시작하면 쓰지 않은 남은 번호는 버려진다. 시퀀스는 schema.sql 에서 만든다.
+ *
+ * memberId = prefix + 36진수 (예: M2bi), 사용자가 정하는 id 와 겹치지 않도록 대문자 prefix 를 붙인다.
+ */
+@Slf4j
+public class HiLoMemberIdGenerator implements MemberIdGenerator {
+
+    public static final String SEQUENCE_NAME = "member_id_seq";
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+    public static final String DEFAULT_PREFIX = "M";
+    //member_id varchar(10)
+    private static final int MAX_LENGTH = 10;
+
+    private final JdbcTemplate template;
+    private final int blockSize;
+    private final String prefix;
+    private final long maxId;
+    private final AtomicLong allocatedBlockCount = new AtomicLong();
+    private volatile Block block;
+
+    private static class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    public HiLoMemberIdGenerator(DataSource dataSource) {
+        this(dataSource, DEFAULT_BLOCK_SIZE, DEFAULT_PREFIX);
+    }
+
+    public HiLoMemberIdGenerator(DataSource dataSource, int blockSize, String prefix) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive blockSize=" + blockSize);
+        }
+        if (prefix.length() >= MAX_LENGTH) {
+            throw new IllegalArgumentException("prefix too long prefix=" + prefix);
+        }
+        this.template = new JdbcTemplate(dataSource);
+        this.blockSize = blockSize;
+        this.prefix = prefix;
+        //36진수 (MAX_LENGTH - prefix 길이) 자리까지
+        this.maxId = (long) Math.pow(Character.MAX_RADIX, MAX_LENGTH - prefix.length()) - 1;
+    }
+
+    /**
+     * 블록이 남아있으면 CAS 한번, 다 쓰면 한 스레드만 다음 블록을 받고 나머지는 기다린다.
+     */
+    @Override
+    public String nextId() {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                long id = current.next.getAndIncrement();
+                if (id < current.end) {
+                    return prefix + Long.toString(id, Character.MAX_RADIX);
+                }
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = allocate();
+                }
+            }
+        }
+    }
+
+    /**
+     * 지금까지 시퀀스에서 받은 블록 수 (= DB 호출 수)
+     */
+    public long getAllocatedBlockCount() {
+        return allocatedBlockCount.get();
+    }
+
+    private Block allocate() {
+        long hi = template.queryForObject("select next value for " + SEQUENCE_NAME, Long.class);
+        long start = hi * blockSize;
+        long end = start + blockSize;
+        if (end - 1 > maxId) {
+            throw new IllegalStateException("member id space exhausted hi=" + hi + ", blockSize=" + blockSize);
+        }
+        allocatedBlockCount.incrementAndGet();
+        log.debug("allocate member id block hi={}, start={}, end={}", hi, start, end);
+        return new Block(start, end);
+    }
+}
@@ -0,0 +1,58 @@
+package hello.jdbc.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * findAllById() IN 절 조회 지원
+ * 키를 IN_LIST_SIZE 개씩 나누고, 마지막 chunk 는 마지막 키로 채워서 항상 같은 sql 을 재사용한다.
+ */
+public abstract class InClauseSupport {
+
+    //IN (...) 하나에 넣는 최대 파라미터 수
+    public static final int IN_LIST_SIZE = 500;
+
+    /**
+     * 중복 제거한 키 목록
+     */
+    static List<String> distinct(Collection<String> memberIds) {
+        return new ArrayList<>(new LinkedHashSet<>(memberIds));
+    }
+
+    static int chunkSize(List<String> memberIds) {
+        return Math.min(IN_LIST_SIZE, memberIds.size());
+    }
+
+    static String selectByIdsSql(int chunkSize) {
+        return "select * from member where member_id in (" + String.join(",", Collections.nCopies(chunkSize, "?")) + ")";
+    }
+
+    /**
+     * from 부터 chunkSize 개의 파라미터, 모자라는 자리는 마지막 키로 채운다.
+     */
+    static Object[] chunkParams(List<String> memberIds, int from, int chunkSize) {
+        Object[] params = new Object[chunkSize];
+        int last = Math.min(from + chunkSize, memberIds.size()) - 1;
+        for (int i = 0; i < chunkSize; i++) {
+            params[i] = memberIds.get(Math.min(from + i, last));
+        }
+        return params;
+    }
+
+    /**
+     * findAllById() 결과에 없는 memberId 목록
+     */
+    public static List<String> missingIds(Collection<String> memberIds, Map<String, ?> found) {
+        List<String> missing = new ArrayList<>();
+        for (String memberId : new LinkedHashSet<>(memberIds)) {
+            if (!found.containsKey(memberId)) {
+                missing.add(memberId);
+            }
+        }
+        return missing;
+    }
+}
@@ -0,0 +1,9 @@
+package hello.jdbc.repository;
+
+/**
+ * 중복되지 않는 memberId 발급
+ */
+public interface MemberIdGenerator {
+  //member_id varchar(10) 안에 들어가는 새 id
+  String nextId();
+}
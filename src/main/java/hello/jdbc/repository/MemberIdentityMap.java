@@ -0,0 +1,100 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 트랜잭션 범위 1차 캐시 (identity map)
+ * 같은 트랜잭션 안에서 같은 회원을 다시 조회하면 SELECT 없이 돌려준다.
+ *
+ * TransactionSynchronizationManager 리소스로 현재 트랜잭션에 바인딩하고 트랜잭션이 끝나면 버린다.
+ * 트랜잭션이 없으면 아무것도 하지 않는다.
+ * 주의! 세이브포인트로 일부만 롤백하면 clear() 를 호출해야 한다.
+ */
+public abstract class MemberIdentityMap {
+
+    private static final Object RESOURCE_KEY = new Object();
+
+    public static Member get(String memberId) {
+        Map<String, Member> members = current(false);
+        if (members == null) {
+            return null;
+        }
+        Member member = members.get(memberId);
+        return member == null ? null : copy(member);
+    }
+
+    public static void put(Member member) {
+        Map<String, Member> members = current(true);
+        if (members != null) {
+            members.put(member.getMemberId(), copy(member));
+        }
+    }
+
+    /**
+     * 절대값 update 반영, DB 의 version 도 1 증가했으므로 같이 올린다.
+     * 1차 캐시에 없으면 version 을 모르기 때문에 넣지 않는다.
+     */
+    public static void updateMoney(String memberId, int money) {
+        Map<String, Member> members = current(false);
+        Member member = members == null ? null : members.get(memberId);
+        if (member != null) {
+            members.put(memberId, new Member(memberId, money, member.getVersion() + 1));
+        }
+    }
+
+    public static void remove(String memberId) {
+        Map<String, Member> members = current(false);
+        if (members != null) {
+            members.remove(memberId);
+        }
+    }
+
+    public static void clear() {
+        Map<String, Member> members = current(false);
+        if (members != null) {
+            members.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Member> current(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        Map<String, Member> members = (Map<String, Member>) TransactionSynchronizationManager.getResource(RESOURCE_KEY);
+        if (members != null || !create) {
+            return members;
+        }
+
+        Map<String, Member> newMembers = new HashMap<>();
+        TransactionSynchronizationManager.bindResource(RESOURCE_KEY, newMembers);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            //REQUIRES_NEW 등으로 트랜잭션이 중단되면 같이 떼어두었다가 재개할 때 다시 바인딩
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(RESOURCE_KEY);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(RESOURCE_KEY, newMembers);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(RESOURCE_KEY);
+            }
+        });
+        return newMembers;
+    }
+
+    private static Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
@@ -2,9 +2,41 @@ package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
 public interface MemberRepository {
+  //saveAll() 한번에 executeBatch 하는 row 수 기본값
+  int DEFAULT_BATCH_SIZE = 1000;
+
   Member save(Member member);
+  //같은 memberId 가 없을 때만 저장, 저장했으면 true (키 중복 예외 없음)
+  boolean saveIfAbsent(Member member);
+  //JDBC batch 로 여러 건 저장, 중복 키 등 row 별 실패는 결과에 담아서 반환
+  SaveAllResult saveAll(Collection<Member> members);
   Member findById(String memberId);
+  //없으면 Optional.empty() (NoSuchElementException 없음)
+  Optional<Member> findOptionalById(String memberId);
+  //select ... for update 로 row 락을 잡고 조회, 락은 트랜잭션이 끝날 때 풀린다 (트랜잭션 안에서 사용)
+  Member findByIdForUpdate(String memberId);
+  //IN 절로 여러 건 조회, 없는 memberId 는 결과 Map 에서 빠진다 (NoSuchElementException 없음)
+  Map<String, Member> findAllById(Collection<String> memberIds);
   void update(String memberId, int money);
+  //여러 건 update (memberId => money), 기본 구현은 한 건씩 update()
+  default void updateAll(Map<String, Integer> moneys) {
+    moneys.forEach(this::update);
+  }
+  //version 이 같을 때만 money 변경 + version 증가, 0건이면 OptimisticLockingFailureException
+  void updateWithVersion(String memberId, int money, long version);
+  //money = money + delta (delta 는 음수 가능), 잔액이 음수가 되면 변경하지 않는다. 변경된 row 수 반환
+  int addMoney(String memberId, int delta);
+  //money >= amount 일 때만 money = money - amount, 변경된 row 수 반환 (0 이면 잔액 부족 또는 회원 없음)
+  //amount <= 0 이면 IllegalArgumentException
+  int withdrawIfSufficient(String memberId, int amount);
   void delete(String memberId);
-}
\ No newline at end of file
+  //여러 건 delete, 기본 구현은 한 건씩 delete()
+  default void deleteAll(Collection<String> memberIds) {
+    memberIds.forEach(this::delete);
+  }
+}
@@ -3,12 +3,19 @@ package hello.jdbc.repository;
 import hello.jdbc.repository.ex.MyDbException;
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 
 /**
  * 예외 누수 문제 해결
@@ -20,9 +27,20 @@ import java.util.NoSuchElementException;
 public class MemberRepositoryV4_1 implements MemberRepository {
 
     private final DataSource dataSource;
+    private final ErrorCodeTranslator exTranslator;
+    private final int batchSize;
 
     public MemberRepositoryV4_1(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public MemberRepositoryV4_1(DataSource dataSource, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
         this.dataSource = dataSource;
+        this.exTranslator = ErrorCodeTranslator.of(dataSource);
+        this.batchSize = batchSize;
     }
 
     @Override
@@ -45,8 +63,104 @@ public class MemberRepositoryV4_1 implements MemberRepository {
         }
     }
 
+    /**
+     * 같은 memberId 가 없을 때만 insert, 동시에 저장해서 키 중복이 나면 false
+     */
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        String sql = "insert into member(member_id, money) " +
+                "select ?, ? where not exists (select 1 from member where member_id=?)";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.setString(3, member.getMemberId());
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            if (exTranslator.isDuplicateKey(e)) {
+                return false;
+            }
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        String sql = "insert into member(member_id, money) values (?, ?)";
+
+        SaveAllResult result = new SaveAllResult();
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            List<Member> chunk = new ArrayList<>(Math.min(batchSize, members.size()));
+            for (Member member : members) {
+                chunk.add(member);
+                if (chunk.size() == batchSize) {
+                    executeBatch(pstmt, chunk, result);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                executeBatch(pstmt, chunk, result);
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    private void executeBatch(PreparedStatement pstmt, List<Member> chunk, SaveAllResult result) throws SQLException {
+        for (Member member : chunk) {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.addBatch();
+        }
+        try {
+            pstmt.executeBatch();
+            result.addSaved(chunk.size());
+        } catch (BatchUpdateException e) {
+            List<Member> failedRows = new ArrayList<>();
+            int processed = result.addBatchFailure(chunk, e, failedRows);
+            pstmt.clearBatch();
+            //실패한 row 는 한 건씩 다시 실행해서 row 별 예외를 얻는다.
+            for (Member member : failedRows) {
+                insertOne(pstmt, member, result);
+            }
+            if (processed < chunk.size()) {
+                executeBatch(pstmt, chunk.subList(processed, chunk.size()), result);
+            }
+        }
+    }
+
+    private void insertOne(PreparedStatement pstmt, Member member, SaveAllResult result) {
+        try {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.executeUpdate();
+            result.addSaved(1);
+        } catch (SQLException e) {
+            result.addFailure(member.getMemberId(), exTranslator.translateToMyDbException(e));
+        }
+    }
+
     @Override
     public Member findById(String memberId){
+        return findOptionalById(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
         String sql = "select * from member where member_id =?";
 
         Connection con = null;
@@ -64,6 +178,37 @@ public class MemberRepositoryV4_1 implements MemberRepository {
                 Member member = new Member();
                 member.setMemberId(rs.getString("member_id"));
                 member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                return Optional.of(member);
+            } else {
+                return Optional.empty();
+            }
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id =? for update";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
                 return member;
             } else {
                 throw new NoSuchElementException("member not found memberId=" + memberId);
@@ -75,9 +220,55 @@ public class MemberRepositoryV4_1 implements MemberRepository {
         }
     }
 
+    /**
+     * IN_LIST_SIZE 개씩 IN 절로 나눠서 하나의 커넥션, 하나의 PreparedStatement 로 조회한다.
+     */
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        List<String> ids = InClauseSupport.distinct(memberIds);
+        Map<String, Member> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        int chunkSize = InClauseSupport.chunkSize(ids);
+        String sql = InClauseSupport.selectByIdsSql(chunkSize);
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                Object[] params = InClauseSupport.chunkParams(ids, from, chunkSize);
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setString(i + 1, (String) params[i]);
+                }
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Member member = new Member();
+                    member.setMemberId(rs.getString("member_id"));
+                    member.setMoney(rs.getInt("money"));
+                    member.setVersion(rs.getLong("version"));
+                    result.put(member.getMemberId(), member);
+                }
+                JdbcUtils.closeResultSet(rs);
+                rs = null;
+            }
+            if (result.size() < ids.size()) {
+                log.debug("findAllById missing count={}", ids.size() - result.size());
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
     @Override
     public void update(String memberId, int money){
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -94,6 +285,72 @@ public class MemberRepositoryV4_1 implements MemberRepository {
         }
     }
 
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, version);
+            if (pstmt.executeUpdate() == 0) {
+                throw new OptimisticLockingFailureException("member changed or not found memberId=" + memberId + ", version=" + version);
+            }
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        //음수 delta 로 잔액이 음수가 되는 row 는 변경하지 않는다.
+        String sql = "update member set money=money+?, version=version+1 where member_id=? and money+?>=0";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, delta);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive amount=" + amount);
+        }
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, amount);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     @Override
     public void delete(String memberId){
         String sql = "delete from member where member_id=?";
@@ -3,14 +3,21 @@ package hello.jdbc.repository;
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.ex.MyDbException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
-import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 
 /**
  * SQLExceptionTranslator 추가
@@ -20,10 +27,20 @@ public class MemberRepositoryV4_2 implements MemberRepository {
 
     private final DataSource dataSource;
     private final SQLExceptionTranslator exTranslator;
+    private final int batchSize;
 
     public MemberRepositoryV4_2(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
         this.dataSource = dataSource;
-        this.exTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        //DataSource 마다 한번 만들어둔 변환기를 공유
+        this.exTranslator = ErrorCodeTranslator.of(dataSource);
+        this.batchSize = batchSize;
     }
 
     @Override
@@ -38,6 +55,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             pstmt.executeUpdate();
+            MemberIdentityMap.put(member);
             return member;
         } catch (SQLException e) {
             throw exTranslator.translate("save", sql, e);
@@ -46,8 +64,121 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    /**
+     * 같은 memberId 가 없을 때만 insert, 동시에 저장해서 키 중복이 나면 false
+     */
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        String sql = "insert into member(member_id, money) " +
+                "select ?, ? where not exists (select 1 from member where member_id=?)";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.setString(3, member.getMemberId());
+            if (pstmt.executeUpdate() == 0) {
+                return false;
+            }
+            MemberIdentityMap.put(member);
+            return true;
+        } catch (SQLException e) {
+            RuntimeException ex = exTranslator.translate("saveIfAbsent", sql, e);
+            if (ex instanceof DuplicateKeyException) {
+                return false;
+            }
+            throw ex;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /**
+     * addBatch/executeBatch 로 batchSize 건씩 한번에 전송한다.
+     * 중복 키 등으로 실패한 row 는 exTranslator 로 변환해서 결과에 담고, 나머지 row 는 계속 저장한다.
+     */
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        String sql = "insert into member(member_id, money) values (?, ?)";
+
+        SaveAllResult result = new SaveAllResult();
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            List<Member> chunk = new ArrayList<>(Math.min(batchSize, members.size()));
+            for (Member member : members) {
+                chunk.add(member);
+                if (chunk.size() == batchSize) {
+                    executeBatch(pstmt, sql, chunk, result);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                executeBatch(pstmt, sql, chunk, result);
+            }
+            return result;
+        } catch (SQLException e) {
+            throw exTranslator.translate("saveAll", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    private void executeBatch(PreparedStatement pstmt, String sql, List<Member> chunk, SaveAllResult result) throws SQLException {
+        for (Member member : chunk) {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.addBatch();
+        }
+        try {
+            pstmt.executeBatch();
+            result.addSaved(chunk.size());
+        } catch (BatchUpdateException e) {
+            List<Member> failedRows = new ArrayList<>();
+            int processed = result.addBatchFailure(chunk, e, failedRows);
+            pstmt.clearBatch();
+            //실패한 row 는 한 건씩 다시 실행해서 row 별 예외를 얻는다.
+            for (Member member : failedRows) {
+                insertOne(pstmt, sql, member, result);
+            }
+            //드라이버가 첫 실패에서 멈췄다면 남은 row 는 다시 전송
+            if (processed < chunk.size()) {
+                executeBatch(pstmt, sql, chunk.subList(processed, chunk.size()), result);
+            }
+        }
+    }
+
+    private void insertOne(PreparedStatement pstmt, String sql, Member member, SaveAllResult result) {
+        try {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            pstmt.executeUpdate();
+            result.addSaved(1);
+        } catch (SQLException e) {
+            result.addFailure(member.getMemberId(), exTranslator.translate("saveAll", sql, e));
+        }
+    }
+
     @Override
     public Member findById(String memberId){
+        return findOptionalById(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+    }
+
+    /**
+     * 트랜잭션 안에서 이미 조회한 회원은 MemberIdentityMap 에서 바로 반환
+     */
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        Member cached = MemberIdentityMap.get(memberId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
         String sql = "select * from member where member_id =?";
 
         Connection con = null;
@@ -65,12 +196,103 @@ public class MemberRepositoryV4_2 implements MemberRepository {
                 Member member = new Member();
                 member.setMemberId(rs.getString("member_id"));
                 member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                MemberIdentityMap.put(member);
+                return Optional.of(member);
+            } else {
+                return Optional.empty();
+            }
+        } catch (SQLException e) {
+            throw exTranslator.translate("findOptionalById", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 락 없이 읽어둔 값일 수 있으므로 MemberIdentityMap 을 거치지 않고 항상 DB 에서 락을 잡는다.
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id =? for update";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                MemberIdentityMap.put(member);
                 return member;
             } else {
                 throw new NoSuchElementException("member not found memberId=" + memberId);
             }
         } catch (SQLException e) {
-            throw exTranslator.translate("findById", sql, e);
+            throw exTranslator.translate("findByIdForUpdate", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * IN_LIST_SIZE 개씩 IN 절로 나눠서 하나의 커넥션, 하나의 PreparedStatement 로 조회한다.
+     */
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (String memberId : InClauseSupport.distinct(memberIds)) {
+            Member cached = MemberIdentityMap.get(memberId);
+            if (cached != null) {
+                result.put(memberId, cached);
+            } else {
+                ids.add(memberId);
+            }
+        }
+        if (ids.isEmpty()) {
+            return result;
+        }
+        int chunkSize = InClauseSupport.chunkSize(ids);
+        String sql = InClauseSupport.selectByIdsSql(chunkSize);
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                Object[] params = InClauseSupport.chunkParams(ids, from, chunkSize);
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setString(i + 1, (String) params[i]);
+                }
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Member member = new Member();
+                    member.setMemberId(rs.getString("member_id"));
+                    member.setMoney(rs.getInt("money"));
+                    member.setVersion(rs.getLong("version"));
+                    result.put(member.getMemberId(), member);
+                    MemberIdentityMap.put(member);
+                }
+                JdbcUtils.closeResultSet(rs);
+                rs = null;
+            }
+            if (result.size() < ids.size()) {
+                log.debug("findAllById missing count={}", ids.size() - result.size());
+            }
+            return result;
+        } catch (SQLException e) {
+            throw exTranslator.translate("findAllById", sql, e);
         } finally {
             close(con, pstmt, rs);
         }
@@ -78,7 +300,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
 
     @Override
     public void update(String memberId, int money){
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -88,6 +310,9 @@ public class MemberRepositoryV4_2 implements MemberRepository {
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
             int resultSize = pstmt.executeUpdate();
+            if (resultSize > 0) {
+                MemberIdentityMap.updateMoney(memberId, money);
+            }
         } catch (SQLException e) {
             throw exTranslator.translate("update", sql, e);
         } finally {
@@ -95,6 +320,82 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    /**
+     * 0건은 SQLException 이 아니므로 translator 를 거치지 않고 같은 DataAccessException 계층의 예외를 직접 던진다.
+     */
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, version);
+            if (pstmt.executeUpdate() == 0) {
+                MemberIdentityMap.remove(memberId);
+                throw new OptimisticLockingFailureException("member changed or not found memberId=" + memberId + ", version=" + version);
+            }
+            MemberIdentityMap.updateMoney(memberId, money);
+        } catch (SQLException e) {
+            throw exTranslator.translate("updateWithVersion", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        //음수 delta 로 잔액이 음수가 되는 row 는 변경하지 않는다.
+        String sql = "update member set money=money+?, version=version+1 where member_id=? and money+?>=0";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, delta);
+            int resultSize = pstmt.executeUpdate();
+            //새 잔액은 DB 가 계산하므로 1차 캐시에서 제거
+            MemberIdentityMap.remove(memberId);
+            return resultSize;
+        } catch (SQLException e) {
+            throw exTranslator.translate("addMoney", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive amount=" + amount);
+        }
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, amount);
+            int resultSize = pstmt.executeUpdate();
+            MemberIdentityMap.remove(memberId);
+            return resultSize;
+        } catch (SQLException e) {
+            throw exTranslator.translate("withdrawIfSufficient", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     @Override
     public void delete(String memberId){
         String sql = "delete from member where member_id=?";
@@ -106,6 +407,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
             pstmt = con.prepareStatement(sql);
             pstmt.setString(1, memberId);
             int resultSize = pstmt.executeUpdate();
+            MemberIdentityMap.remove(memberId);
         } catch (SQLException e) {
             throw exTranslator.translate("delete", sql, e);
         }finally {
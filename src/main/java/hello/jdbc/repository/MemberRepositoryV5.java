@@ -2,9 +2,26 @@ package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+
 import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 
 /**
@@ -13,10 +30,29 @@ import javax.sql.DataSource;
 @Slf4j
 public class MemberRepositoryV5 implements MemberRepository {
 
+    //streamAll() 에서 한번에 가져오는 row 수
+    public static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcTemplate template;
+    //스캔 전용, fetchSize 가 설정된 template
+    private final JdbcTemplate streamTemplate;
+    private final int batchSize;
 
     public MemberRepositoryV5(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public MemberRepositoryV5(DataSource dataSource, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
         this.template = new JdbcTemplate(dataSource);
+        this.streamTemplate = new JdbcTemplate(dataSource);
+        this.streamTemplate.setFetchSize(STREAM_FETCH_SIZE);
+        //JdbcTemplate 기본 변환기(SQLErrorCodeSQLExceptionTranslator) 대신 미리 만들어둔 코드표 사용
+        this.template.setExceptionTranslator(ErrorCodeTranslator.of(dataSource));
+        this.streamTemplate.setExceptionTranslator(ErrorCodeTranslator.of(dataSource));
+        this.batchSize = batchSize;
     }
 
     @Override
@@ -24,6 +60,7 @@ public class MemberRepositoryV5 implements MemberRepository {
         String sql = "insert into member(member_id, money) values (?, ?)";
         // 이 한줄로 밑에 있는 connection 맺고, PreparedStatement update 해주는 기능을 한다.
         template.update(sql, member.getMemberId(), member.getMoney());
+        MemberIdentityMap.put(member);
         return member;
         /*Connection con = null;
         PreparedStatement pstmt = null;
@@ -41,17 +78,278 @@ public class MemberRepositoryV5 implements MemberRepository {
         }*/
     }
 
+    /**
+     * insert ... select ... where not exists 로 한번에 확인 + 저장
+     * 동시에 같은 memberId 를 저장하면 둘 다 not exists 를 통과할 수 있어서 그때만 키 중복 예외를 false 로 바꾼다.
+     */
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        String sql = "insert into member(member_id, money) " +
+                "select ?, ? where not exists (select 1 from member where member_id=?)";
+        try {
+            if (template.update(sql, member.getMemberId(), member.getMoney(), member.getMemberId()) == 0) {
+                return false;
+            }
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        MemberIdentityMap.put(member);
+        return true;
+    }
+
+    /**
+     * batchSize 건씩 JdbcTemplate.batchUpdate 로 전송한다.
+     * batchUpdate(sql, list, batchSize, setter) 는 첫 실패에서 나머지 chunk 를 버리기 때문에 chunk 를 직접 나눠서
+     * 실패한 chunk 의 BatchUpdateException 에서 row 별 성공/실패를 꺼낸다. 실패한 row 는 한 건씩 다시 실행해서 예외를 얻는다.
+     */
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        String sql = "insert into member(member_id, money) values (?, ?)";
+
+        SaveAllResult result = new SaveAllResult();
+        List<Member> chunk = new ArrayList<>(Math.min(batchSize, members.size()));
+        for (Member member : members) {
+            chunk.add(member);
+            if (chunk.size() == batchSize) {
+                batchInsert(sql, chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            batchInsert(sql, chunk, result);
+        }
+        return result;
+    }
+
+    private void batchInsert(String sql, List<Member> chunk, SaveAllResult result) {
+        try {
+            template.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    Member member = chunk.get(i);
+                    ps.setString(1, member.getMemberId());
+                    ps.setInt(2, member.getMoney());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return chunk.size();
+                }
+            });
+            result.addSaved(chunk.size());
+        } catch (DataAccessException e) {
+            if (!(e.getCause() instanceof BatchUpdateException)) {
+                throw e;
+            }
+            List<Member> failedRows = new ArrayList<>();
+            int processed = result.addBatchFailure(chunk, (BatchUpdateException) e.getCause(), failedRows);
+            //실패한 row 는 한 건씩 다시 실행해서 row 별 예외를 얻는다.
+            for (Member member : failedRows) {
+                try {
+                    template.update(sql, member.getMemberId(), member.getMoney());
+                    result.addSaved(1);
+                } catch (DataAccessException rowException) {
+                    result.addFailure(member.getMemberId(), rowException);
+                }
+            }
+            //드라이버가 첫 실패에서 멈췄다면 남은 row 는 다시 전송
+            if (processed < chunk.size()) {
+                batchInsert(sql, chunk.subList(processed, chunk.size()), result);
+            }
+        }
+    }
+
+    /**
+     * 트랜잭션 안에서 이미 조회한 회원은 MemberIdentityMap 에서 바로 반환
+     */
     @Override
     public Member findById(String memberId) {
+        Member cached = MemberIdentityMap.get(memberId);
+        if (cached != null) {
+            return cached;
+        }
         String sql = "select * from member where member_id =?";
         Member member = template.queryForObject(sql, memberRowMapper(), memberId);
+        MemberIdentityMap.put(member);
+        return member;
+    }
+
+    /**
+     * queryForObject 는 0건이면 EmptyResultDataAccessException 을 만들기 때문에 query 로 조회한다.
+     */
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        Member cached = MemberIdentityMap.get(memberId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        String sql = "select * from member where member_id =?";
+        List<Member> members = template.query(sql, memberRowMapper(), memberId);
+        if (members.isEmpty()) {
+            return Optional.empty();
+        }
+        Member member = members.get(0);
+        MemberIdentityMap.put(member);
+        return Optional.of(member);
+    }
+
+    /**
+     * 락 없이 읽어둔 값일 수 있으므로 MemberIdentityMap 을 거치지 않고 항상 DB 에서 락을 잡는다.
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id =? for update";
+        Member member = template.queryForObject(sql, memberRowMapper(), memberId);
+        MemberIdentityMap.put(member);
         return member;
     }
 
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (String memberId : InClauseSupport.distinct(memberIds)) {
+            Member cached = MemberIdentityMap.get(memberId);
+            if (cached != null) {
+                result.put(memberId, cached);
+            } else {
+                ids.add(memberId);
+            }
+        }
+        if (ids.isEmpty()) {
+            return result;
+        }
+        int chunkSize = InClauseSupport.chunkSize(ids);
+        String sql = InClauseSupport.selectByIdsSql(chunkSize);
+        //JdbcTemplate 은 호출마다 커넥션을 얻기 때문에 하나의 커넥션으로 묶어서 chunk 를 실행한다.
+        template.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                RowMapper<Member> rowMapper = memberRowMapper();
+                for (int from = 0; from < ids.size(); from += chunkSize) {
+                    Object[] params = InClauseSupport.chunkParams(ids, from, chunkSize);
+                    for (int i = 0; i < params.length; i++) {
+                        pstmt.setString(i + 1, (String) params[i]);
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        int rowNum = 0;
+                        while (rs.next()) {
+                            Member member = rowMapper.mapRow(rs, rowNum++);
+                            result.put(member.getMemberId(), member);
+                            MemberIdentityMap.put(member);
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+        if (result.size() < ids.size()) {
+            log.debug("findAllById missing count={}", ids.size() - result.size());
+        }
+        return result;
+    }
+
+    /**
+     * member 테이블 전체 스캔
+     * ResultSet 을 열어둔 채 STREAM_FETCH_SIZE 건씩 가져오기 때문에 테이블 크기와 상관없이 힙 사용량이 일정하다.
+     * 주의! 반드시 try-with-resources 등으로 close 해야 ResultSet 과 커넥션이 반환된다.
+     */
+    public Stream<Member> streamAll() {
+        String sql = "select * from member";
+        return streamTemplate.queryForStream(sql, memberRowMapper());
+    }
+
+    /**
+     * member_id 기준 keyset 페이지 조회
+     * offset 없이 afterMemberId 다음부터 limit 건, 첫 페이지는 afterMemberId = null
+     */
+    public List<Member> findPage(String afterMemberId, int limit) {
+        if (afterMemberId == null) {
+            String sql = "select * from member order by member_id limit ?";
+            return template.query(sql, memberRowMapper(), limit);
+        }
+        String sql = "select * from member where member_id > ? order by member_id limit ?";
+        return template.query(sql, memberRowMapper(), afterMemberId, limit);
+    }
+
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";
-        template.update(sql, money, memberId);
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+        if (template.update(sql, money, memberId) > 0) {
+            MemberIdentityMap.updateMoney(memberId, money);
+        }
+    }
+
+    /**
+     * batch update 한번, 없는 memberId 는 0건
+     */
+    @Override
+    public void updateAll(Map<String, Integer> moneys) {
+        List<Object[]> args = new ArrayList<>(moneys.size());
+        moneys.forEach((memberId, money) -> args.add(new Object[]{money, memberId}));
+        template.batchUpdate("update member set money=?, version=version+1 where member_id=?", args);
+        //드라이버에 따라 row 별 건수를 모를 수 있으므로 1차 캐시에서 제거
+        moneys.keySet().forEach(MemberIdentityMap::remove);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+        if (template.update(sql, money, memberId, version) == 0) {
+            MemberIdentityMap.remove(memberId);
+            throw new OptimisticLockingFailureException("member changed or not found memberId=" + memberId + ", version=" + version);
+        }
+        MemberIdentityMap.updateMoney(memberId, money);
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        //음수 delta 로 잔액이 음수가 되는 row 는 변경하지 않는다.
+        String sql = "update member set money=money+?, version=version+1 where member_id=? and money+?>=0";
+        int resultSize = template.update(sql, delta, memberId, delta);
+        //새 잔액은 DB 가 계산하므로 1차 캐시에서 제거
+        MemberIdentityMap.remove(memberId);
+        return resultSize;
+    }
+
+    /**
+     * 여러 계좌에 증감을 batch update 한번으로 반영 (앞에서부터 count 건)
+     * 잔액이 음수가 되는 row 는 변경하지 않는다.
+     * @return 변경되지 않은 memberId (잔액 부족 또는 회원 없음), 롤백 여부는 호출하는 쪽에서 결정
+     */
+    public List<String> addMoneyAll(String[] memberIds, long[] deltas, int count) {
+        String sql = "update member set money=money+?, version=version+1 where member_id=? and money+?>=0";
+        int[] resultSizes = template.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, deltas[i]);
+                ps.setString(2, memberIds[i]);
+                ps.setLong(3, deltas[i]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return count;
+            }
+        });
+        List<String> rejectedIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MemberIdentityMap.remove(memberIds[i]);
+            if (resultSizes[i] == 0) {
+                rejectedIds.add(memberIds[i]);
+            }
+        }
+        return rejectedIds;
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive amount=" + amount);
+        }
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+        int resultSize = template.update(sql, amount, memberId, amount);
+        MemberIdentityMap.remove(memberId);
+        return resultSize;
     }
 
     @Override
@@ -59,6 +357,18 @@ public class MemberRepositoryV5 implements MemberRepository {
         String sql = "delete from member where member_id=?";
 
         template.update(sql, memberId);
+        MemberIdentityMap.remove(memberId);
+    }
+
+    /**
+     * batch delete 한번
+     */
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        List<Object[]> args = new ArrayList<>(memberIds.size());
+        memberIds.forEach(memberId -> args.add(new Object[]{memberId}));
+        template.batchUpdate("delete from member where member_id=?", args);
+        memberIds.forEach(MemberIdentityMap::remove);
     }
 
 
@@ -67,6 +377,7 @@ public class MemberRepositoryV5 implements MemberRepository {
             Member member = new Member();
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         };
     }
@@ -0,0 +1,89 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyDuplicateKeyException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * saveAll() 결과
+ * 저장 성공 건수 + row 별 실패 예외(memberId 기준)
+ */
+public class SaveAllResult {
+
+    private int savedCount;
+    private final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+
+    public int getSavedCount() {
+        return savedCount;
+    }
+
+    public Map<String, RuntimeException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * 키 중복으로 저장되지 않은 memberId 목록
+     */
+    public List<String> getDuplicateIds() {
+        List<String> duplicateIds = new ArrayList<>();
+        failures.forEach((memberId, e) -> {
+            if (e instanceof DuplicateKeyException || e instanceof MyDuplicateKeyException) {
+                duplicateIds.add(memberId);
+            }
+        });
+        return duplicateIds;
+    }
+
+    void addSaved(int count) {
+        savedCount += count;
+    }
+
+    /**
+     * 나눠서 저장한 결과 합치기 (ShardedMemberRepository)
+     */
+    void merge(SaveAllResult other) {
+        savedCount += other.savedCount;
+        failures.putAll(other.failures);
+    }
+
+    void addFailure(String memberId, RuntimeException e) {
+        failures.put(memberId, e);
+    }
+
+    /**
+     * BatchUpdateException 의 updateCounts 를 보고 성공한 row 를 세고, 실패한 row 는 failedRows 에 담는다.
+     * 실패 원인은 여기서 정하지 않는다. getNextException 체인이 실패한 row 순서라는 보장이 없기 때문 (H2 는 나중 실패가 앞)
+     * 호출하는 쪽에서 실패한 row 를 한 건씩 다시 실행해서 row 자신의 예외를 기록한다. (addFailure)
+     *
+     * @return 드라이버가 실제로 처리한 row 수 (첫 실패에서 멈추는 드라이버는 chunk 보다 작다)
+     */
+    int addBatchFailure(List<Member> chunk, BatchUpdateException e, List<Member> failedRows) {
+        int[] updateCounts = e.getUpdateCounts();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                failedRows.add(chunk.get(i));
+            } else {
+                savedCount++;
+            }
+        }
+
+        //첫 실패에서 멈추는 드라이버 : updateCounts 바로 다음 row 가 실패한 row
+        if (updateCounts.length < chunk.size()) {
+            failedRows.add(chunk.get(updateCounts.length));
+            return updateCounts.length + 1;
+        }
+        return updateCounts.length;
+    }
+}
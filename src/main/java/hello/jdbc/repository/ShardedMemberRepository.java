@@ -0,0 +1,285 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * memberId 를 consistent hashing 으로 여러 DataSource(shard)에 나눠 저장하는 MemberRepository
+ *
+ * shard 마다 MemberRepositoryV5 + DataSourceTransactionManager 를 따로 갖는다.
+ * 한 건 조회/변경은 memberId 의 shard 로 보내고, 여러 건 조회/저장과 페이지 스캔은 shard 별로 나눠서 병렬로 실행한 뒤 합친다.
+ * shard 를 추가해도 ring 에서 옮겨지는 memberId 는 약 1/N 이다. (데이터 이동은 하지 않음)
+ *
+ * 주의! 트랜잭션은 shard 하나 안에서만 보장된다. transactionManager(memberId) 로 그 shard 의 트랜잭션을 열어야 하고,
+ * 다른 shard 의 변경은 그 트랜잭션에 참여하지 않는다. (분산 트랜잭션 없음)
+ * 트랜잭션 안에서는 커넥션이 스레드에 묶여 있으므로 병렬 실행하지 않고 호출한 스레드에서 차례로 실행한다.
+ * 트랜잭션 안에서 그 트랜잭션에 묶이지 않은 shard 를 건드리는 여러 건 호출(saveAll, findAllById, findPage)은
+ * 그 shard 에서 바로 자동 커밋되어 롤백되지 않으므로 IllegalStateException 으로 막는다.
+ *
+ * DataSource 는 생성하는 쪽이 소유한다. close() 는 병렬 실행용 스레드만 정리하고 DataSource 는 닫지 않는다.
+ */
+public class ShardedMemberRepository implements MemberRepository, AutoCloseable {
+
+    //shard 하나당 ring 위의 가상 노드 수, 많을수록 고르게 나뉜다.
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final List<Shard> shards;
+    private final NavigableMap<Long, Shard> ring = new TreeMap<>();
+    private final ExecutorService executor;
+
+    public static class Shard {
+        private final int index;
+        private final DataSource dataSource;
+        private final MemberRepositoryV5 repository;
+        private final PlatformTransactionManager transactionManager;
+
+        Shard(int index, DataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+            this.repository = new MemberRepositoryV5(dataSource);
+            this.transactionManager = new DataSourceTransactionManager(dataSource);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public MemberRepositoryV5 getRepository() {
+            return repository;
+        }
+
+        public PlatformTransactionManager getTransactionManager() {
+            return transactionManager;
+        }
+    }
+
+    public ShardedMemberRepository(List<DataSource> dataSources) {
+        this(dataSources, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedMemberRepository(List<DataSource> dataSources, int virtualNodes) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("dataSources must not be empty");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive virtualNodes=" + virtualNodes);
+        }
+        List<Shard> shards = new ArrayList<>(dataSources.size());
+        for (int i = 0; i < dataSources.size(); i++) {
+            Shard shard = new Shard(i, dataSources.get(i));
+            shards.add(shard);
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.put(hash("shard-" + i + "#" + v), shard);
+            }
+        }
+        this.shards = List.copyOf(shards);
+
+        AtomicInteger threadSequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "member-shard-" + threadSequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * ring 에서 memberId 해시 다음(시계 방향)의 첫 가상 노드가 가리키는 shard
+     */
+    public Shard shardFor(String memberId) {
+        Map.Entry<Long, Shard> entry = ring.ceilingEntry(hash(memberId));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * memberId 가 있는 shard 의 트랜잭션 매니저 (이 트랜잭션은 그 shard 의 변경만 묶는다)
+     */
+    public PlatformTransactionManager transactionManager(String memberId) {
+        return shardFor(memberId).transactionManager;
+    }
+
+    /**
+     * 병렬 실행용 스레드 풀만 종료한다. shard DataSource 는 넘겨준 쪽에서 직접 닫아야 한다.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public Member save(Member member) {
+        return shardFor(member.getMemberId()).repository.save(member);
+    }
+
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        return shardFor(member.getMemberId()).repository.saveIfAbsent(member);
+    }
+
+    /**
+     * shard 별로 나눠서 병렬 저장, shard 마다 따로 커밋된다.
+     * 트랜잭션 안에서는 그 트랜잭션의 shard 회원만 저장할 수 있다. (다른 shard 가 섞이면 IllegalStateException)
+     */
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        Map<Shard, List<Member>> groups = group(members, Member::getMemberId);
+        SaveAllResult result = new SaveAllResult();
+        for (SaveAllResult shardResult : scatter(groups.keySet(), shard -> shard.repository.saveAll(groups.get(shard)))) {
+            result.merge(shardResult);
+        }
+        return result;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return shardFor(memberId).repository.findById(memberId);
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        return shardFor(memberId).repository.findOptionalById(memberId);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return shardFor(memberId).repository.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<Shard, List<String>> groups = group(memberIds, Function.identity());
+        Map<String, Member> result = new HashMap<>();
+        for (Map<String, Member> shardResult : scatter(groups.keySet(), shard -> shard.repository.findAllById(groups.get(shard)))) {
+            result.putAll(shardResult);
+        }
+        return result;
+    }
+
+    /**
+     * member_id 기준 keyset 페이지 조회 (MemberRepositoryV5.findPage 와 같은 순서)
+     * shard 마다 limit 건씩 병렬로 가져와서 합친 다음 앞에서부터 limit 건
+     */
+    public List<Member> findPage(String afterMemberId, int limit) {
+        List<Member> merged = new ArrayList<>();
+        for (List<Member> page : scatter(shards, shard -> shard.repository.findPage(afterMemberId, limit))) {
+            merged.addAll(page);
+        }
+        merged.sort(Comparator.comparing(Member::getMemberId));
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        shardFor(memberId).repository.update(memberId, money);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        shardFor(memberId).repository.updateWithVersion(memberId, money, version);
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        return shardFor(memberId).repository.addMoney(memberId, delta);
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        return shardFor(memberId).repository.withdrawIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        shardFor(memberId).repository.delete(memberId);
+    }
+
+    private <T> Map<Shard, List<T>> group(Collection<T> items, Function<T, String> memberId) {
+        Map<Shard, List<T>> groups = new HashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(shardFor(memberId.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    /**
+     * shard 별 작업을 병렬로 실행하고 결과를 모은다. 트랜잭션 안이면 호출한 스레드에서 차례로 실행
+     * 하나라도 실패하면 첫 예외를 그대로 던진다.
+     */
+    private <R> List<R> scatter(Collection<Shard> targets, Function<Shard, R> call) {
+        List<R> results = new ArrayList<>(targets.size());
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            //트랜잭션에 묶이지 않은 shard 는 따로 커밋되므로 하나도 실행하기 전에 막는다.
+            for (Shard shard : targets) {
+                if (!TransactionSynchronizationManager.hasResource(shard.dataSource)) {
+                    throw new IllegalStateException("cross-shard call in a transaction, shard is not bound to the current transaction shard=" + shard.index);
+                }
+            }
+            targets.forEach(shard -> results.add(call.apply(shard)));
+            return results;
+        }
+        if (targets.size() <= 1) {
+            targets.forEach(shard -> results.add(call.apply(shard)));
+            return results;
+        }
+        List<Future<R>> futures = new ArrayList<>(targets.size());
+        targets.forEach(shard -> futures.add(executor.submit((Callable<R>) () -> call.apply(shard))));
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting shards", e);
+        }
+        return results;
+    }
+
+    //FNV-1a 64bit + murmur3 fmix64
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
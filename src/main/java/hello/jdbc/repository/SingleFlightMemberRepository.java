@@ -0,0 +1,226 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 같은 memberId 동시 조회 합치기 (single flight) MemberRepository 데코레이터
+ *
+ * 트랜잭션 밖의 findById/findOptionalById 만 대상이다.
+ * 같은 memberId 조회가 이미 진행 중이면 쿼리를 새로 보내지 않고 그 결과를 기다려서 받는다. (먼저 온 스레드가 쿼리)
+ * 기다리는 시간은 timeout 까지, 넘으면 QueryTimeoutException
+ *
+ * 트랜잭션 안의 조회는 자기 커넥션(스냅샷, 락)으로 봐야 하므로 합치지 않는다.
+ * 변경이 끝나면(트랜잭션이면 커밋 후) 진행 중인 조회에서 빼서, 변경 후 조회가 변경 전 결과를 받지 않게 한다.
+ */
+@Slf4j
+public class SingleFlightMemberRepository implements MemberRepository {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(3);
+
+    private final MemberRepository delegate;
+    private final long timeoutNanos;
+    private final ConcurrentHashMap<String, CompletableFuture<Optional<Member>>> inFlight = new ConcurrentHashMap<>();
+
+    //트랜잭션 밖 조회 요청 수
+    private final LongAdder requestCount = new LongAdder();
+    //실제로 보낸 쿼리 수
+    private final LongAdder queryCount = new LongAdder();
+    //다른 스레드의 쿼리 결과를 받은 요청 수
+    private final LongAdder collapsedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    public SingleFlightMemberRepository(MemberRepository delegate) {
+        this(delegate, DEFAULT_TIMEOUT);
+    }
+
+    public SingleFlightMemberRepository(MemberRepository delegate, Duration timeout) {
+        this.delegate = delegate;
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getQueryCount() {
+        return queryCount.sum();
+    }
+
+    public long getCollapsedCount() {
+        return collapsedCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * 합쳐진 요청 비율 = 다른 스레드 결과를 받은 요청 / 전체 요청
+     */
+    public double getCollapseRatio() {
+        long requests = requestCount.sum();
+        return requests == 0 ? 0 : (double) collapsedCount.sum() / requests;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findById(memberId);
+        }
+        return load(memberId).orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findOptionalById(memberId);
+        }
+        return load(memberId);
+    }
+
+    private Optional<Member> load(String memberId) {
+        requestCount.increment();
+        CompletableFuture<Optional<Member>> flight = new CompletableFuture<>();
+        CompletableFuture<Optional<Member>> existing = inFlight.putIfAbsent(memberId, flight);
+        if (existing != null) {
+            collapsedCount.increment();
+            return await(memberId, existing).map(SingleFlightMemberRepository::copy);
+        }
+        queryCount.increment();
+        try {
+            Optional<Member> member = delegate.findOptionalById(memberId);
+            //결과를 알리기 전에 빼야 이후 요청이 끝난 조회에 붙지 않는다.
+            inFlight.remove(memberId, flight);
+            flight.complete(member.map(SingleFlightMemberRepository::copy));
+            return member;
+        } catch (Throwable e) {
+            //Error 도 빼고 알려야 한다. 남아있으면 이후 요청이 끝나지 않는 조회를 계속 기다린다.
+            inFlight.remove(memberId, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Optional<Member> await(String memberId, CompletableFuture<Optional<Member>> flight) {
+        try {
+            return flight.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeoutCount.increment();
+            throw new QueryTimeoutException("collapsed findById timed out memberId=" + memberId, e);
+        } catch (ExecutionException e) {
+            //쿼리한 스레드의 예외를 그대로 전달
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting memberId=" + memberId, e);
+        }
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        return delegate.findAllById(memberIds);
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = delegate.save(member);
+        forgetAfterCommit(member.getMemberId());
+        return saved;
+    }
+
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        boolean saved = delegate.saveIfAbsent(member);
+        forgetAfterCommit(member.getMemberId());
+        return saved;
+    }
+
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        SaveAllResult result = delegate.saveAll(members);
+        for (Member member : members) {
+            forgetAfterCommit(member.getMemberId());
+        }
+        return result;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        delegate.update(memberId, money);
+        forgetAfterCommit(memberId);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        delegate.updateWithVersion(memberId, money, version);
+        forgetAfterCommit(memberId);
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        int updated = delegate.addMoney(memberId, delta);
+        forgetAfterCommit(memberId);
+        return updated;
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        int updated = delegate.withdrawIfSufficient(memberId, amount);
+        forgetAfterCommit(memberId);
+        return updated;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+        forgetAfterCommit(memberId);
+    }
+
+    /**
+     * 이미 기다리고 있는 요청은 그대로 두고, 이후 요청은 새 쿼리를 보내게 한다.
+     */
+    private void forgetAfterCommit(String memberId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            inFlight.remove(memberId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                inFlight.remove(memberId);
+            }
+        });
+    }
+
+    //기다린 스레드마다 다른 객체를 받도록 복사
+    private static Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
@@ -0,0 +1,278 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 인기 계좌 잔액 분할 MemberRepository 데코레이터
+ * hotMemberIds 계좌는 member row(기본 잔액) + member_slot row slotCount 개(member_id, slot, money)로 나눠서 저장한다.
+ *
+ * 입금 : 임의의 slot 하나에 money = money + ? => 입금끼리 같은 row 락을 기다리지 않는다.
+ * 출금, 절대값 변경, 락 조회 : slot 을 모두 잠그고 기본 잔액으로 모은 다음(sweep) 기본 row 에서 처리
+ * 조회 : 기본 잔액 + slot 합계, version 도 합계 (slot 은 입금마다 version 증가)
+ *       기본 row 와 slot 을 join 해서 한 문장으로 읽는다. (따로 읽으면 사이에 sweep 된 금액이 빠지거나 두번 더해진다)
+ * member_slot 테이블은 schema.sql 에서 만든다.
+ *
+ * 나머지 계좌는 delegate 그대로
+ */
+@Slf4j
+public class SlottedMemberRepository implements MemberRepository {
+
+    public static final int DEFAULT_SLOT_COUNT = 8;
+
+    private static final String SELECT_WITH_SLOTS = "select m.member_id, m.money, m.version, " +
+            "coalesce(sum(s.money), 0) slot_money, coalesce(sum(s.version), 0) slot_version " +
+            "from member m left join member_slot s on s.member_id = m.member_id " +
+            "where m.member_id in (%s) group by m.member_id, m.money, m.version";
+
+    private final MemberRepository delegate;
+    private final JdbcTemplate template;
+    //sweep 과 기본 row 변경을 묶는 트랜잭션, 이미 트랜잭션이 있으면 참여한다.
+    private final TransactionTemplate txTemplate;
+    private final Set<String> hotMemberIds;
+    private final int slotCount;
+
+    private static class SlotSum {
+        private long money;
+        private long version;
+    }
+
+    public SlottedMemberRepository(MemberRepository delegate, DataSource dataSource, Set<String> hotMemberIds) {
+        this(delegate, dataSource, hotMemberIds, DEFAULT_SLOT_COUNT);
+    }
+
+    public SlottedMemberRepository(MemberRepository delegate, DataSource dataSource, Set<String> hotMemberIds, int slotCount) {
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("slotCount must be positive slotCount=" + slotCount);
+        }
+        this.delegate = delegate;
+        this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.hotMemberIds = Set.copyOf(hotMemberIds);
+        this.slotCount = slotCount;
+    }
+
+    public boolean isHot(String memberId) {
+        return hotMemberIds.contains(memberId);
+    }
+
+    @Override
+    public Member save(Member member) {
+        //slot row 는 첫 입금 때 만든다.
+        return delegate.save(member);
+    }
+
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        return delegate.saveIfAbsent(member);
+    }
+
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        return delegate.saveAll(members);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (!isHot(memberId)) {
+            return delegate.findById(memberId);
+        }
+        return findOptionalById(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        if (!isHot(memberId)) {
+            return delegate.findOptionalById(memberId);
+        }
+        return selectWithSlots(List.of(memberId)).stream().findFirst();
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        if (!isHot(memberId)) {
+            return delegate.findByIdForUpdate(memberId);
+        }
+        //slot 을 잠그고 기본 잔액으로 모으면 기본 row 가 전체 잔액
+        return txTemplate.execute(status -> {
+            SlotSum sum = sweep(memberId);
+            Member member = delegate.findByIdForUpdate(memberId);
+            member.setVersion(member.getVersion() + sum.version);
+            return member;
+        });
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        List<String> hotIds = new ArrayList<>();
+        List<String> coldIds = new ArrayList<>();
+        for (String memberId : InClauseSupport.distinct(memberIds)) {
+            (isHot(memberId) ? hotIds : coldIds).add(memberId);
+        }
+        Map<String, Member> result = new HashMap<>(delegate.findAllById(coldIds));
+        //인기 계좌는 설정한 몇 개뿐이므로 IN 절 하나
+        for (Member member : selectWithSlots(hotIds)) {
+            result.put(member.getMemberId(), member);
+        }
+        return result;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        if (!isHot(memberId)) {
+            delegate.update(memberId, money);
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            lockSlots(memberId);
+            template.update("update member_slot set money=0 where member_id=? and money<>0", memberId);
+            delegate.update(memberId, money);
+        });
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        if (!isHot(memberId)) {
+            delegate.updateWithVersion(memberId, money, version);
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            SlotSum sum = lockSlots(memberId);
+            //조회할 때의 version 은 기본 row + slot 합계
+            long baseVersion = version - sum.version;
+            template.update("update member_slot set money=0 where member_id=? and money<>0", memberId);
+            //실패하면(OptimisticLockingFailureException) slot 변경도 같이 롤백
+            delegate.updateWithVersion(memberId, money, baseVersion);
+        });
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        if (!isHot(memberId)) {
+            return delegate.addMoney(memberId, delta);
+        }
+        if (delta >= 0) {
+            return credit(memberId, delta);
+        }
+        return txTemplate.execute(status -> {
+            sweep(memberId);
+            return delegate.addMoney(memberId, delta);
+        });
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        if (!isHot(memberId)) {
+            return delegate.withdrawIfSufficient(memberId, amount);
+        }
+        return txTemplate.execute(status -> {
+            sweep(memberId);
+            return delegate.withdrawIfSufficient(memberId, amount);
+        });
+    }
+
+    @Override
+    public void delete(String memberId) {
+        if (!isHot(memberId)) {
+            delegate.delete(memberId);
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            template.update("delete from member_slot where member_id=?", memberId);
+            delegate.delete(memberId);
+        });
+    }
+
+    /**
+     * 임의의 slot 에 입금, slot row 가 없으면 회원이 있을 때만 만든다.
+     */
+    private int credit(String memberId, int delta) {
+        String sql = "update member_slot set money=money+?, version=version+1 where member_id=? and slot=?";
+        int slot = ThreadLocalRandom.current().nextInt(slotCount);
+        int resultSize = template.update(sql, delta, memberId, slot);
+        if (resultSize > 0) {
+            return resultSize;
+        }
+        try {
+            return template.update("insert into member_slot(member_id, slot, money, version) " +
+                    "select member_id, ?, ?, 1 from member where member_id=?", slot, delta, memberId);
+        } catch (DuplicateKeyException e) {
+            //다른 요청이 먼저 만들었다.
+            return template.update(sql, delta, memberId, slot);
+        }
+    }
+
+    /**
+     * slot 을 모두 잠그고 잔액을 기본 row 로 옮긴다. 트랜잭션 안에서 호출
+     * 트랜잭션이 끝날 때까지 이 계좌의 입금은 대기한다.
+     */
+    private SlotSum sweep(String memberId) {
+        SlotSum sum = lockSlots(memberId);
+        if (sum.money != 0) {
+            //기본 row 가 없으면(회원 삭제) slot 을 비우지 않는다. 비우면 slot 잔액이 사라진다.
+            if (delegate.addMoney(memberId, toMoney(memberId, sum.money)) == 0) {
+                log.warn("sweep skipped, member not found memberId={}, slotMoney={}", memberId, sum.money);
+                return sum;
+            }
+            template.update("update member_slot set money=0 where member_id=? and money<>0", memberId);
+            log.debug("sweep memberId={}, money={}", memberId, sum.money);
+        }
+        return sum;
+    }
+
+    /**
+     * slot row 를 잠그고 합계, H2 는 집계 쿼리에 for update 를 허용하지 않아서 row 를 읽어 더한다.
+     */
+    private SlotSum lockSlots(String memberId) {
+        String sql = "select money, version from member_slot where member_id=? for update";
+        SlotSum sum = new SlotSum();
+        template.query(sql, rs -> {
+            sum.money += rs.getInt("money");
+            sum.version += rs.getLong("version");
+        }, memberId);
+        return sum;
+    }
+
+    /**
+     * 기본 row 와 slot 합계를 한 문장으로 조회, 회원이 없으면 빠진다.
+     */
+    private List<Member> selectWithSlots(List<String> memberIds) {
+        if (memberIds.isEmpty()) {
+            return List.of();
+        }
+        String sql = String.format(SELECT_WITH_SLOTS, String.join(",", Collections.nCopies(memberIds.size(), "?")));
+        return template.query(sql, (rs, rowNum) -> {
+            String memberId = rs.getString("member_id");
+            return new Member(memberId,
+                    toMoney(memberId, rs.getLong("money") + rs.getLong("slot_money")),
+                    rs.getLong("version") + rs.getLong("slot_version"));
+        }, memberIds.toArray());
+    }
+
+    /**
+     * 기본 잔액 + slot 합계가 int 범위를 넘으면 잘라내지 않고 예외
+     */
+    private static int toMoney(String memberId, long money) {
+        if (money > Integer.MAX_VALUE || money < Integer.MIN_VALUE) {
+            throw new IllegalStateException("money overflow memberId=" + memberId + ", money=" + money);
+        }
+        return (int) money;
+    }
+}
@@ -0,0 +1,283 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * 쓰기 지연 (unit of work) 데코레이터
+ *
+ * 트랜잭션 안의 save/update/delete 는 바로 실행하지 않고 memberId 별로 마지막 상태만 모아두었다가
+ * 커밋 직전(beforeCommit)에 delegate 의 deleteAll/saveAll/updateAll 로 한번씩 내보낸다. (MemberRepositoryV5 는 각각 JDBC batch 한번)
+ * 트랜잭션이 없으면 바로 delegate 를 호출한다.
+ *
+ * findById 는 모아둔 변경을 반영해서 반환한다. 다른 sql 로 변경을 바로 봐야 하면 flush() 를 호출한다.
+ * 주의! 키 중복 같은 오류는 save 시점이 아니라 flush 시점(보통 커밋)에 발생한다.
+ */
+@Slf4j
+public class WriteBehindMemberRepository implements MemberRepository {
+
+    private enum Op {INSERT, UPDATE, DELETE, DELETE_INSERT}
+
+    private static class PendingWrite {
+        private Op op;
+        private int money;
+
+        PendingWrite(Op op, int money) {
+            this.op = op;
+            this.money = money;
+        }
+    }
+
+    private final Object resourceKey = new Object();
+    private final MemberRepository delegate;
+
+    public WriteBehindMemberRepository(MemberRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Member save(Member member) {
+        Map<String, PendingWrite> writes = currentWrites(true);
+        if (writes == null) {
+            return delegate.save(member);
+        }
+        PendingWrite pending = writes.get(member.getMemberId());
+        if (pending == null) {
+            writes.put(member.getMemberId(), new PendingWrite(Op.INSERT, member.getMoney()));
+        } else if (pending.op == Op.DELETE) {
+            pending.op = Op.DELETE_INSERT;
+            pending.money = member.getMoney();
+        } else {
+            //이미 있는 회원을 다시 저장 => 지금까지 변경을 내보내고 insert 를 다시 기록 (flush 시 키 중복)
+            flush();
+            currentWrites(true).put(member.getMemberId(), new PendingWrite(Op.INSERT, member.getMoney()));
+        }
+        return member;
+    }
+
+    @Override
+    public boolean saveIfAbsent(Member member) {
+        //존재 여부는 DB 에서 확인해야 하므로 모아두지 않는다.
+        flushIfPending(member.getMemberId());
+        return delegate.saveIfAbsent(member);
+    }
+
+    @Override
+    public SaveAllResult saveAll(Collection<Member> members) {
+        //row 별 결과가 필요하기 때문에 모아두지 않고 바로 실행
+        flush();
+        return delegate.saveAll(members);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        Map<String, PendingWrite> writes = currentWrites(false);
+        PendingWrite pending = writes == null ? null : writes.get(memberId);
+        if (pending == null) {
+            return delegate.findById(memberId);
+        }
+        switch (pending.op) {
+            case DELETE:
+                throw new NoSuchElementException("member not found memberId=" + memberId);
+            case UPDATE:
+                //update 는 회원이 있을 때만 의미가 있다.
+                return pendingUpdate(delegate.findById(memberId), pending);
+            default:
+                return new Member(memberId, pending.money);
+        }
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        Map<String, PendingWrite> writes = currentWrites(false);
+        PendingWrite pending = writes == null ? null : writes.get(memberId);
+        if (pending == null) {
+            return delegate.findOptionalById(memberId);
+        }
+        switch (pending.op) {
+            case DELETE:
+                return Optional.empty();
+            case UPDATE:
+                return delegate.findOptionalById(memberId).map(member -> pendingUpdate(member, pending));
+            default:
+                return Optional.of(new Member(memberId, pending.money));
+        }
+    }
+
+    /**
+     * DB 에서 읽은 회원에 모아둔 update 반영, flush 하면 version 이 1 증가한다. (여러 번 update 해도 update 한번)
+     * delegate 가 1차 캐시 객체를 반환할 수 있으므로 새 객체로 만든다.
+     */
+    private static Member pendingUpdate(Member member, PendingWrite pending) {
+        return new Member(member.getMemberId(), pending.money, member.getVersion() + 1);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        //락을 잡을 row 가 DB 에 있어야 하므로 모아둔 변경을 먼저 내보낸다.
+        flushIfPending(memberId);
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        flush();
+        return delegate.findAllById(memberIds);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        Map<String, PendingWrite> writes = currentWrites(true);
+        if (writes == null) {
+            delegate.update(memberId, money);
+            return;
+        }
+        PendingWrite pending = writes.get(memberId);
+        if (pending == null) {
+            writes.put(memberId, new PendingWrite(Op.UPDATE, money));
+        } else if (pending.op != Op.DELETE) {
+            //INSERT, UPDATE, DELETE_INSERT 는 마지막 금액만 바꾼다. DELETE 뒤의 update 는 0건이라 무시
+            pending.money = money;
+        }
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        //version 비교는 DB 에서 해야 하므로 모아두지 않는다.
+        flushIfPending(memberId);
+        delegate.updateWithVersion(memberId, money, version);
+    }
+
+    @Override
+    public int addMoney(String memberId, int delta) {
+        //DB 에서 계산하는 증감은 모아둔 변경을 먼저 내보내고 실행
+        flushIfPending(memberId);
+        return delegate.addMoney(memberId, delta);
+    }
+
+    @Override
+    public int withdrawIfSufficient(String memberId, int amount) {
+        flushIfPending(memberId);
+        return delegate.withdrawIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        Map<String, PendingWrite> writes = currentWrites(true);
+        if (writes == null) {
+            delegate.delete(memberId);
+            return;
+        }
+        PendingWrite pending = writes.get(memberId);
+        if (pending != null && pending.op == Op.INSERT) {
+            //insert 후 delete => 아무것도 하지 않은 것과 같다.
+            writes.remove(memberId);
+        } else {
+            writes.put(memberId, new PendingWrite(Op.DELETE, 0));
+        }
+    }
+
+    /**
+     * 모아둔 변경을 지금 DB 로 내보낸다. (트랜잭션은 커밋하지 않음)
+     * 같은 종류끼리 묶어서 delete, insert, update 순서로 delegate 에 한번씩 호출 (1차 캐시 등은 delegate 가 관리)
+     */
+    public void flush() {
+        Map<String, PendingWrite> writes = currentWrites(false);
+        if (writes == null || writes.isEmpty()) {
+            return;
+        }
+        List<String> deletes = new ArrayList<>();
+        List<Member> inserts = new ArrayList<>();
+        Map<String, Integer> updates = new LinkedHashMap<>();
+        writes.forEach((memberId, pending) -> {
+            switch (pending.op) {
+                case DELETE:
+                    deletes.add(memberId);
+                    break;
+                case DELETE_INSERT:
+                    deletes.add(memberId);
+                    inserts.add(new Member(memberId, pending.money));
+                    break;
+                case INSERT:
+                    inserts.add(new Member(memberId, pending.money));
+                    break;
+                case UPDATE:
+                    updates.put(memberId, pending.money);
+                    break;
+            }
+        });
+        writes.clear();
+
+        log.debug("flush deletes={}, inserts={}, updates={}", deletes.size(), inserts.size(), updates.size());
+        if (!deletes.isEmpty()) {
+            delegate.deleteAll(deletes);
+        }
+        if (!inserts.isEmpty()) {
+            SaveAllResult result = delegate.saveAll(inserts);
+            if (result.hasFailures()) {
+                //save 시점에 났어야 할 예외(키 중복 등)를 지금 던진다. 커밋 중이면 롤백
+                throw result.getFailures().values().iterator().next();
+            }
+        }
+        if (!updates.isEmpty()) {
+            delegate.updateAll(updates);
+        }
+    }
+
+    private void flushIfPending(String memberId) {
+        Map<String, PendingWrite> writes = currentWrites(false);
+        if (writes != null && writes.containsKey(memberId)) {
+            flush();
+        }
+    }
+
+    /**
+     * 현재 트랜잭션의 변경 목록, 트랜잭션이 없으면 null
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, PendingWrite> currentWrites(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        Map<String, PendingWrite> writes = (Map<String, PendingWrite>) TransactionSynchronizationManager.getResource(resourceKey);
+        if (writes != null || !create) {
+            return writes;
+        }
+
+        Map<String, PendingWrite> newWrites = new LinkedHashMap<>();
+        TransactionSynchronizationManager.bindResource(resourceKey, newWrites);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(resourceKey);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(resourceKey, newWrites);
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                flush();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(resourceKey);
+            }
+        });
+        return newWrites;
+    }
+}
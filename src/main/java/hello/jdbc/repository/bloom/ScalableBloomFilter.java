@@ -0,0 +1,181 @@
+package hello.jdbc.repository.bloom;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 크기가 늘어나는 Bloom filter (Scalable Bloom Filter)
+ *
+ * mightContain() == false 이면 절대 add() 되지 않은 키, true 이면 있을 수도 있는 키 (오탐)
+ * 현재 filter 가 용량만큼 차면 용량 2배, 오탐률 절반인 filter 를 뒤에 붙인다.
+ * => 전체 오탐률 <= 처음 오탐률 * 2, 그래서 처음 filter 는 목표 오탐률의 절반으로 만든다.
+ *
+ * add/mightContain 은 락 없이 여러 스레드에서 호출할 수 있다. 삭제는 지원하지 않는다.
+ */
+public class ScalableBloomFilter {
+
+    private static final int GROWTH = 2;
+    private static final double TIGHTENING = 0.5;
+    private static final double LN2 = Math.log(2);
+
+    //처음 filter 의 오탐률, n 번째 filter 는 firstRate * TIGHTENING^n
+    private final double firstRate;
+    //뒤에 붙이기만 하는 copy-on-write 배열
+    private volatile Stage[] stages;
+
+    private static final class Stage {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final long capacity;
+        private final AtomicLong count = new AtomicLong();
+
+        Stage(long capacity, double falsePositiveRate) {
+            //m = -n ln(p) / (ln2)^2, k = m / n * ln2
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+            int words = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (m + 63) / 64));
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = (long) words * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * LN2));
+            this.capacity = capacity;
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long current = bits.get(word);
+                while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    current = bits.get(word);
+                }
+            }
+        }
+
+        /**
+         * 실제 들어간 키 수 기준 오탐률 (1 - e^(-kn/m))^k
+         */
+        double falsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashCount * count.get() / bitCount), hashCount);
+        }
+    }
+
+    /**
+     * @param initialCapacity 처음 filter 에 넣을 키 수
+     * @param falsePositiveRate 목표 오탐률 (0 ~ 1)
+     */
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be positive initialCapacity=" + initialCapacity);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1 falsePositiveRate=" + falsePositiveRate);
+        }
+        this.firstRate = falsePositiveRate * (1 - TIGHTENING);
+        this.stages = new Stage[]{new Stage(initialCapacity, firstRate)};
+    }
+
+    public boolean mightContain(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        for (Stage stage : stages) {
+            if (stage.mightContain(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 이미 있을 수도 있는 키는 다시 넣지 않는다. (용량을 아끼기 위해, 오탐인 키도 mightContain 은 true)
+     */
+    public void add(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        Stage[] current = stages;
+        for (Stage stage : current) {
+            if (stage.mightContain(h1, h2)) {
+                return;
+            }
+        }
+        Stage last = current[current.length - 1];
+        last.put(h1, h2);
+        if (last.count.incrementAndGet() >= last.capacity) {
+            grow(current);
+        }
+    }
+
+    private synchronized void grow(Stage[] expected) {
+        if (stages != expected) {
+            return;
+        }
+        Stage last = expected[expected.length - 1];
+        Stage[] grown = Arrays.copyOf(expected, expected.length + 1);
+        grown[expected.length] = new Stage(last.capacity * GROWTH, firstRate * Math.pow(TIGHTENING, expected.length));
+        stages = grown;
+    }
+
+    /**
+     * 들어간 키 수 (mightContain 이 이미 true 였던 키는 빠진다)
+     */
+    public long getCount() {
+        long count = 0;
+        for (Stage stage : stages) {
+            count += stage.count.get();
+        }
+        return count;
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    public long getBitCount() {
+        long bitCount = 0;
+        for (Stage stage : stages) {
+            bitCount += stage.bitCount;
+        }
+        return bitCount;
+    }
+
+    /**
+     * 지금 채워진 정도로 계산한 오탐률, 어느 한 filter 에서라도 오탐이면 오탐
+     */
+    public double getExpectedFalsePositiveRate() {
+        double none = 1;
+        for (Stage stage : stages) {
+            none *= 1 - stage.falsePositiveRate();
+        }
+        return 1 - none;
+    }
+
+    //FNV-1a 64bit + murmur3 fmix64
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,7 +1,16 @@
 package hello.jdbc.repository.ex;
 
+/**
+ * 데이터 접근 계층 예외
+ * 키 중복처럼 잡아서 복구하는 예외는 자주 발생하기 때문에 스택 트레이스 수집 비용이 크다.
+ * -Dhello.jdbc.stacklessExceptions=true 또는 setStackTraceEnabled(false) 이면 하위 예외까지 스택 트레이스를 만들지 않는다.
+ */
 public class MyDbException extends RuntimeException{
 
+    public static final String STACKLESS_PROPERTY = "hello.jdbc.stacklessExceptions";
+
+    private static volatile boolean stackTraceEnabled = !Boolean.getBoolean(STACKLESS_PROPERTY);
+
     public MyDbException() {
     }
 
@@ -16,4 +25,23 @@ public class MyDbException extends RuntimeException{
     public MyDbException(Throwable cause) {
         super(cause);
     }
+
+    public static boolean isStackTraceEnabled() {
+        return stackTraceEnabled;
+    }
+
+    public static void setStackTraceEnabled(boolean enabled) {
+        stackTraceEnabled = enabled;
+    }
+
+    /**
+     * 생성자에서 호출된다. 꺼져 있으면 스택을 걷지 않는다. (원인 예외 cause 는 그대로 유지)
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        if (!stackTraceEnabled) {
+            return this;
+        }
+        return super.fillInStackTrace();
+    }
 }
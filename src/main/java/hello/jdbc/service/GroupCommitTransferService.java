@@ -0,0 +1,204 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 그룹 커밋 이체
+ * 여러 스레드의 이체 요청을 큐에 모아두고 writer 스레드 하나가 maxBatchSize 건 또는 maxLatency 마다
+ * accountTransferAll() 로 한 트랜잭션에 커밋한다. 요청마다 커넥션 획득 + 커밋하던 비용을 배치 하나로 나눈다.
+ *
+ * 큐는 ConcurrentLinkedQueue + AtomicInteger 로 크기 제한, 가득 차면 바로 RejectedExecutionException
+ * 넣기는 종료 확인과 함께 submitLock 안에서 한다. (close() 와 겹친 요청이 큐에 남아 끝나지 않는 일 방지)
+ * 주의! future 콜백은 writer 스레드에서 실행되므로 오래 걸리는 작업은 thenApplyAsync 등을 사용해야 한다.
+ */
+@Slf4j
+public class GroupCommitTransferService implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final Duration DEFAULT_MAX_LATENCY = Duration.ofMillis(5);
+
+    private final MemberService memberService;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+
+    private final ConcurrentLinkedQueue<PendingTransfer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Thread writer;
+    //running 을 끄는 것과 큐에 넣는 것을 나눌 수 없게 묶는다.
+    private final Object submitLock = new Object();
+    private volatile boolean running = true;
+    //writer 가 Error 등으로 멈췄으면 그 예외, 이후 요청은 바로 실패
+    private volatile Throwable writerFailure;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder transferCount = new LongAdder();
+
+    private static class PendingTransfer {
+        private final Transfer transfer;
+        private final CompletableFuture<TransferResult> future = new CompletableFuture<>();
+        private final long enqueuedNanos = System.nanoTime();
+
+        private PendingTransfer(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+    public GroupCommitTransferService(MemberService memberService) {
+        this(memberService, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LATENCY);
+    }
+
+    /**
+     * @param capacity     큐에 쌓아둘 수 있는 최대 요청 수
+     * @param maxBatchSize 트랜잭션 하나에 커밋하는 최대 이체 수
+     * @param maxLatency   첫 요청이 들어온 뒤 배치를 채우려고 기다리는 최대 시간
+     */
+    public GroupCommitTransferService(MemberService memberService, int capacity, int maxBatchSize, Duration maxLatency) {
+        if (capacity < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("capacity, maxBatchSize must be positive capacity=" + capacity
+                    + ", maxBatchSize=" + maxBatchSize);
+        }
+        this.memberService = memberService;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = maxLatency.toNanos();
+        this.writer = new Thread(this::writeLoop, "group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public CompletableFuture<TransferResult> submit(String fromId, String toId, int money) {
+        return submit(new Transfer(fromId, toId, money));
+    }
+
+    public CompletableFuture<TransferResult> submit(Transfer transfer) {
+        PendingTransfer pending = new PendingTransfer(transfer);
+        int size;
+        synchronized (submitLock) {
+            if (!running) {
+                Throwable failure = writerFailure;
+                return CompletableFuture.failedFuture(failure == null
+                        ? new RejectedExecutionException("group commit closed")
+                        : new RejectedExecutionException("group commit writer stopped", failure));
+            }
+            //자리를 먼저 예약하고 넣는다.
+            size = queueSize.incrementAndGet();
+            if (size > capacity) {
+                queueSize.decrementAndGet();
+                return CompletableFuture.failedFuture(new RejectedExecutionException("group commit queue full capacity=" + capacity));
+            }
+            queue.offer(pending);
+        }
+        //비어있던 큐에 첫 요청이거나 배치가 찼으면 writer 를 깨운다.
+        if (size == 1 || size == maxBatchSize) {
+            LockSupport.unpark(writer);
+        }
+        return pending.future;
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getTransferCount() {
+        return transferCount.sum();
+    }
+
+    /**
+     * 남은 요청을 모두 커밋한 다음 writer 스레드 종료
+     */
+    @Override
+    public void close() throws InterruptedException {
+        //이후 submit() 은 큐에 넣지 못하므로, 이미 들어온 요청은 writer 가 모두 커밋한다.
+        synchronized (submitLock) {
+            running = false;
+        }
+        LockSupport.unpark(writer);
+        writer.join();
+        //writer 가 실패로 멈춘 경우 남은 요청
+        failQueued(new RejectedExecutionException("group commit closed"));
+    }
+
+    private void writeLoop() {
+        List<PendingTransfer> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                PendingTransfer first = queue.peek();
+                if (first == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                //배치가 덜 찼으면 첫 요청 기준 maxLatency 까지 기다린다.
+                long waitNanos = first.enqueuedNanos + maxLatencyNanos - System.nanoTime();
+                if (running && queueSize.get() < maxBatchSize && waitNanos > 0) {
+                    LockSupport.parkNanos(this, waitNanos);
+                    continue;
+                }
+                PendingTransfer pending;
+                while (batch.size() < maxBatchSize && (pending = queue.poll()) != null) {
+                    queueSize.decrementAndGet();
+                    batch.add(pending);
+                }
+                commit(batch);
+                batch.clear();
+            }
+        } catch (Throwable e) {
+            //Error 등으로 writer 가 멈추면 기다리는 요청이 끝나지 않으므로 모두 실패시키고 다시 던진다.
+            //큐를 비우기 전에 running 을 꺼야 submit() 과 겹친 요청이 빠지지 않는다.
+            synchronized (submitLock) {
+                writerFailure = e;
+                running = false;
+            }
+            log.error("group commit writer failed size={}, queued={}", batch.size(), queueSize.get(), e);
+            for (PendingTransfer pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            failQueued(new RejectedExecutionException("group commit writer stopped", e));
+            throw e;
+        }
+        log.debug("group commit writer stopped batches={}, transfers={}", getBatchCount(), getTransferCount());
+    }
+
+    private void failQueued(RejectedExecutionException e) {
+        PendingTransfer pending;
+        while ((pending = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private void commit(List<PendingTransfer> batch) {
+        List<Transfer> transfers = new ArrayList<>(batch.size());
+        for (PendingTransfer pending : batch) {
+            transfers.add(pending.transfer);
+        }
+        List<TransferResult> results;
+        try {
+            results = memberService.accountTransferAll(transfers);
+        } catch (RuntimeException e) {
+            //커밋 실패 등 배치 전체 실패, Error 는 writeLoop 에서 처리
+            log.warn("group commit failed size={}", batch.size(), e);
+            for (PendingTransfer pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        batchCount.increment();
+        transferCount.add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(results.get(i));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package hello.jdbc.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * select ... for update 락 대기 시간 집계
+ * 여러 스레드가 동시에 기록하므로 LongAdder 사용
+ */
+public class LockWaitMetrics {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(long waitNanos) {
+        count.increment();
+        totalNanos.add(waitNanos);
+        maxNanos.accumulate(waitNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotal(TimeUnit unit) {
+        return unit.convert(totalNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getMax(TimeUnit unit) {
+        return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+    }
+
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "LockWaitMetrics{count=" + getCount()
+                + ", meanMicros=" + String.format("%.1f", getMeanMicros())
+                + ", maxMicros=" + getMax(TimeUnit.MICROSECONDS) + "}";
+    }
+}
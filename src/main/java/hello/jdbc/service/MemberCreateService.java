@@ -0,0 +1,28 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberIdGenerator;
+import hello.jdbc.repository.MemberRepository;
+
+/**
+ * MemberIdGenerator 가 발급한 memberId 로 회원 저장
+ * 발급한 id 는 겹치지 않기 때문에 키 중복 재시도를 하지 않는다.
+ */
+public class MemberCreateService implements MemberCreator {
+
+    private final MemberRepository memberRepository;
+    private final MemberIdGenerator memberIdGenerator;
+
+    public MemberCreateService(MemberRepository memberRepository, MemberIdGenerator memberIdGenerator) {
+        if (memberIdGenerator == null) {
+            throw new IllegalArgumentException("memberIdGenerator must not be null");
+        }
+        this.memberRepository = memberRepository;
+        this.memberIdGenerator = memberIdGenerator;
+    }
+
+    @Override
+    public Member create(int money) {
+        return memberRepository.save(new Member(memberIdGenerator.nextId(), money));
+    }
+}
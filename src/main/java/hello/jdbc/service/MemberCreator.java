@@ -0,0 +1,13 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+
+/**
+ * memberId 를 발급해서 회원 생성, 회원을 만들 수 있는 서비스만 구현한다.
+ */
+public interface MemberCreator {
+
+    //MemberIdGenerator 로 새 memberId 를 받아서 회원 저장 (키 중복 재시도 없음)
+    Member create(int money);
+
+}
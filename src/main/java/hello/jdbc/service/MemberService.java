@@ -1,8 +1,14 @@
 package hello.jdbc.service;
 
+import hello.jdbc.domain.Transfer;
+
+import java.util.List;
+
 public interface MemberService {
 
     void accountTransFer(String fromId, String toId, int money);
+    //여러 건을 하나의 트랜잭션으로 이체, 실패한 건은 세이브포인트로 그 건만 롤백하고 결과에 담는다.
+    List<TransferResult> accountTransferAll(List<Transfer> transfers);
     void bizLogic(String fromId, String toId, int money);
 
 }
@@ -1,9 +1,13 @@
 package hello.jdbc.service;
 
+import hello.jdbc.domain.Transfer;
 import hello.jdbc.repository.MemberRepository;
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.List;
 
 /**
  * 예외 누수 문제 해결
@@ -26,6 +30,12 @@ public class MemberServiceV4 implements MemberService{
         bizLogic(fromId, toId, money);
     }
 
+    @Override
+    @Transactional
+    public List<TransferResult> accountTransferAll(List<Transfer> transfers) {
+        return TransferBatchSupport.transferAll(TransactionAspectSupport.currentTransactionStatus(), transfers, this::bizLogic);
+    }
+
     @Override
     public void bizLogic(String fromId, String toId, int money){
         //입금자
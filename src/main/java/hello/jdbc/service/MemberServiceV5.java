@@ -0,0 +1,63 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.List;
+
+/**
+ * 원자적 증감 update 로 이체
+ * findById 2번 + update 2번(절대값) => 조건부 update 2번
+ * money = money - ? 를 DB 가 row 락을 잡고 계산하기 때문에 READ COMMITTED 에서도 갱신 손실이 없다.
+ */
+@Slf4j
+public class MemberServiceV5 implements MemberService {
+
+    private final MemberRepository memberRepository;
+
+    public MemberServiceV5(MemberRepository memberRepository) {
+        this.memberRepository = memberRepository;
+    }
+
+    @Override
+    @Transactional
+    public void accountTransFer(String fromId, String toId, int money) {
+        bizLogic(fromId, toId, money);
+    }
+
+    @Override
+    @Transactional
+    public List<TransferResult> accountTransferAll(List<Transfer> transfers) {
+        return TransferBatchSupport.transferAll(TransactionAspectSupport.currentTransactionStatus(), transfers, this::bizLogic);
+    }
+
+    @Override
+    public void bizLogic(String fromId, String toId, int money) {
+        //0 이하 금액은 출금 조건(money >= ?)을 통과해서 받는 쪽 잔액을 빼앗는다.
+        if (money <= 0) {
+            throw new IllegalArgumentException("이체 금액은 0보다 커야 합니다. money=" + money);
+        }
+        //출금 : money >= ? 조건으로 잔액이 충분할 때만 차감
+        if (memberRepository.withdrawIfSufficient(fromId, money) == 0) {
+            throw new IllegalStateException("잔액 부족 또는 회원 없음 fromId=" + fromId);
+        }
+        //검증
+        validation(toId);
+        //입금
+        if (memberRepository.addMoney(toId, money) == 0) {
+            throw new IllegalStateException("회원 없음 toId=" + toId);
+        }
+    }
+
+
+    private static void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+
+
+}
@@ -0,0 +1,81 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * H2 서버 측 함수(CREATE ALIAS TRANSFER, schema.sql)로 이체
+ * 출금/검증/입금 전체가 CALL 한번, 네트워크 왕복 한번으로 끝난다.
+ *
+ * H2 는 실패한 문장의 변경을 문장 단위로 되돌리기 때문에 트랜잭션 없이(auto commit) 호출해도 원자적이다.
+ * 바깥 트랜잭션이 있으면 JdbcTemplate 이 같은 커넥션으로 참여한다.
+ * 주의! 소스 코드 alias 는 H2 서버가 컴파일하기 때문에 H2 서버가 JDK 로 실행되어야 한다.
+ */
+@Slf4j
+public class MemberServiceV6 implements MemberService {
+
+    //TRANSFER 반환 코드 (schema.sql 의 TRANSFER 함수와 같아야 한다)
+    static final int TRANSFER_OK = 0;
+    static final int TRANSFER_INSUFFICIENT = 1;
+    static final int TRANSFER_TO_NOT_FOUND = 2;
+    static final int TRANSFER_INVALID_AMOUNT = 3;
+
+    private final JdbcTemplate template;
+    //accountTransferAll() 전용, 같은 DataSource 의 트랜잭션이 이미 있으면 참여한다.
+    private final TransactionTemplate txTemplate;
+
+    public MemberServiceV6(DataSource dataSource) {
+        this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Override
+    public void accountTransFer(String fromId, String toId, int money) {
+        bizLogic(fromId, toId, money);
+    }
+
+    /**
+     * CALL 한번이 이체 한건, 여러 건을 하나의 트랜잭션으로 묶고 실패한 CALL 만 세이브포인트로 롤백
+     */
+    @Override
+    public List<TransferResult> accountTransferAll(List<Transfer> transfers) {
+        return txTemplate.execute(status -> TransferBatchSupport.transferAll(status, transfers, this::bizLogic));
+    }
+
+    @Override
+    public void bizLogic(String fromId, String toId, int money) {
+        //0 이하 금액은 출금 조건(money >= ?)을 통과해서 받는 쪽 잔액을 빼앗는다. (TRANSFER 함수도 거절)
+        if (money <= 0) {
+            throw new IllegalArgumentException("이체 금액은 0보다 커야 합니다. money=" + money);
+        }
+        //검증 : DB 변경 전에 먼저 수행
+        validation(toId);
+
+        int result = template.queryForObject("CALL TRANSFER(?, ?, ?)", Integer.class, fromId, toId, money);
+        if (result == TRANSFER_OK) {
+            return;
+        }
+        if (result == TRANSFER_INSUFFICIENT) {
+            throw new IllegalStateException("잔액 부족 또는 회원 없음 fromId=" + fromId);
+        }
+        if (result == TRANSFER_INVALID_AMOUNT) {
+            throw new IllegalArgumentException("이체 금액은 0보다 커야 합니다. money=" + money);
+        }
+        throw new IllegalStateException("회원 없음 toId=" + toId);
+    }
+
+
+    private static void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+
+
+}
@@ -0,0 +1,84 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.List;
+
+/**
+ * 데드락 없는 이체
+ * V4 는 from, to 호출 순서대로 row 락을 잡기 때문에 A->B, B->A 이체가 동시에 오면 서로의 락을 기다린다. (데드락, 락 타임아웃)
+ * 두 계좌를 항상 memberId 순서로 select ... for update 해서 락 순서를 하나로 고정한다.
+ */
+@Slf4j
+public class MemberServiceV7 implements MemberService {
+
+    private final MemberRepository memberRepository;
+    private final LockWaitMetrics lockWaitMetrics = new LockWaitMetrics();
+
+    public MemberServiceV7(MemberRepository memberRepository) {
+        this.memberRepository = memberRepository;
+    }
+
+    public LockWaitMetrics getLockWaitMetrics() {
+        return lockWaitMetrics;
+    }
+
+    @Override
+    @Transactional
+    public void accountTransFer(String fromId, String toId, int money) {
+        bizLogic(fromId, toId, money);
+    }
+
+    @Override
+    @Transactional
+    public List<TransferResult> accountTransferAll(List<Transfer> transfers) {
+        return TransferBatchSupport.transferAll(TransactionAspectSupport.currentTransactionStatus(), transfers, this::bizLogic);
+    }
+
+    @Override
+    public void bizLogic(String fromId, String toId, int money) {
+        //0 이하 금액은 잔액 비교를 통과해서 받는 쪽 잔액을 빼앗는다.
+        if (money <= 0) {
+            throw new IllegalArgumentException("이체 금액은 0보다 커야 합니다. money=" + money);
+        }
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("같은 계좌로 이체할 수 없습니다. memberId=" + fromId);
+        }
+        //memberId 가 작은 계좌부터 락
+        boolean fromFirst = fromId.compareTo(toId) < 0;
+        Member first = lock(fromFirst ? fromId : toId);
+        Member second = lock(fromFirst ? toId : fromId);
+        Member fromMember = fromFirst ? first : second;
+        Member toMember = fromFirst ? second : first;
+
+        if (fromMember.getMoney() < money) {
+            throw new IllegalStateException("잔액 부족 fromId=" + fromId);
+        }
+        memberRepository.update(fromId, fromMember.getMoney() - money);
+        //검증
+        validation(toMember);
+        memberRepository.update(toId, toMember.getMoney() + money);
+    }
+
+    private Member lock(String memberId) {
+        long start = System.nanoTime();
+        try {
+            return memberRepository.findByIdForUpdate(memberId);
+        } finally {
+            lockWaitMetrics.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void validation(Member toMember) {
+        if (toMember.getMemberId().equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+
+
+}
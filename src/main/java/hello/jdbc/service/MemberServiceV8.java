@@ -0,0 +1,142 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 낙관적 락 이체 (row 락을 미리 잡지 않음)
+ * 조회한 version 이 그대로일 때만 update 하고, 다른 트랜잭션이 먼저 바꿨으면
+ * OptimisticLockingFailureException => 새 트랜잭션으로 다시 시도한다. (jitter backoff, 최대 maxAttempts 번)
+ *
+ * 경합이 적을 때 유리하다. 비관적 락은 MemberServiceV7
+ */
+@Slf4j
+public class MemberServiceV8 implements MemberService {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final Duration DEFAULT_BASE_BACKOFF = Duration.ofMillis(5);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMillis(100);
+
+    private final TransactionTemplate txTemplate;
+    private final MemberRepository memberRepository;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final LongAdder conflictCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+
+    public MemberServiceV8(PlatformTransactionManager transactionManager, MemberRepository memberRepository) {
+        this(transactionManager, memberRepository, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    public MemberServiceV8(PlatformTransactionManager transactionManager, MemberRepository memberRepository,
+                           int maxAttempts, Duration baseBackoff, Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive maxAttempts=" + maxAttempts);
+        }
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.memberRepository = memberRepository;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    /**
+     * 충돌(OptimisticLockingFailureException) 횟수
+     */
+    public long getConflictCount() {
+        return conflictCount.sum();
+    }
+
+    /**
+     * maxAttempts 번 모두 충돌해서 실패한 이체 수
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.sum();
+    }
+
+    @Override
+    public void accountTransFer(String fromId, String toId, int money) {
+        //바깥 트랜잭션에 참여하면 충돌 시 전체가 rollback-only 가 되므로 재시도하지 않는다.
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            bizLogic(fromId, toId, money);
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                txTemplate.executeWithoutResult(status -> bizLogic(fromId, toId, money));
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                conflictCount.increment();
+                if (attempt >= maxAttempts) {
+                    exhaustedCount.increment();
+                    throw e;
+                }
+                log.debug("optimistic lock conflict attempt={}, fromId={}, toId={}", attempt, fromId, toId);
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * 충돌한 이체는 재시도하지 않고 실패 결과로 남긴다.
+     */
+    @Override
+    public List<TransferResult> accountTransferAll(List<Transfer> transfers) {
+        return txTemplate.execute(status -> TransferBatchSupport.transferAll(status, transfers, this::bizLogic));
+    }
+
+    @Override
+    public void bizLogic(String fromId, String toId, int money) {
+        //0 이하 금액은 잔액 비교를 통과해서 받는 쪽 잔액을 빼앗는다.
+        if (money <= 0) {
+            throw new IllegalArgumentException("이체 금액은 0보다 커야 합니다. money=" + money);
+        }
+        //입금자
+        Member fromMember = memberRepository.findById(fromId);
+        //받는자
+        Member toMember = memberRepository.findById(toId);
+
+        if (fromMember.getMoney() < money) {
+            throw new IllegalStateException("잔액 부족 fromId=" + fromId);
+        }
+        memberRepository.updateWithVersion(fromId, fromMember.getMoney() - money, fromMember.getVersion());
+        //검증
+        validation(toMember);
+        memberRepository.updateWithVersion(toId, toMember.getMoney() + money, toMember.getVersion());
+    }
+
+    /**
+     * full jitter : 0 ~ min(max, base * 2^(attempt-1)) 사이 임의 시간 대기
+     * 충돌한 트랜잭션들이 같은 시점에 다시 부딪히지 않도록 흩어준다.
+     */
+    private void backoff(int attempt, OptimisticLockingFailureException e) {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 20));
+        long sleepNanos = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private static void validation(Member toMember) {
+        if (toMember.getMemberId().equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+
+
+}
@@ -0,0 +1,46 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 정산 파일 같은 대량 이체를 chunkSize 건씩 나눠서 accountTransferAll() 호출
+ * chunk 하나가 트랜잭션 하나, 트랜잭션이 너무 길어지거나 락을 오래 잡지 않도록 나눈다.
+ */
+@Slf4j
+public class TransferBatchExecutor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final MemberService memberService;
+    private final int chunkSize;
+
+    public TransferBatchExecutor(MemberService memberService) {
+        this(memberService, DEFAULT_CHUNK_SIZE);
+    }
+
+    public TransferBatchExecutor(MemberService memberService, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive chunkSize=" + chunkSize);
+        }
+        this.memberService = memberService;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return 입력 순서와 같은 순서의 이체별 결과
+     */
+    public List<TransferResult> execute(List<Transfer> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (int from = 0; from < transfers.size(); from += chunkSize) {
+            List<Transfer> chunk = transfers.subList(from, Math.min(from + chunkSize, transfers.size()));
+            results.addAll(memberService.accountTransferAll(chunk));
+        }
+        long failed = results.stream().filter(result -> !result.isSuccess()).count();
+        log.info("transfer batch total={}, failed={}", results.size(), failed);
+        return results;
+    }
+}
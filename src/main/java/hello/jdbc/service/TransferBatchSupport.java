@@ -0,0 +1,42 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberIdentityMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * accountTransferAll() 지원
+ * 하나의 트랜잭션 안에서 이체마다 세이브포인트를 만들고, 실패한 이체는 세이브포인트까지만 롤백한다.
+ * 주의! WriteBehindMemberRepository 처럼 DB 밖에 모아둔 변경은 세이브포인트로 되돌릴 수 없다.
+ */
+@Slf4j
+public abstract class TransferBatchSupport {
+
+    interface TransferOp {
+        void transfer(String fromId, String toId, int money);
+    }
+
+    static List<TransferResult> transferAll(TransactionStatus status, List<Transfer> transfers, TransferOp op) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            Object savepoint = status.createSavepoint();
+            try {
+                op.transfer(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+                results.add(TransferResult.success(transfer));
+            } catch (RuntimeException e) {
+                log.debug("transfer failed transfer={}, error={}", transfer, e.toString());
+                status.rollbackToSavepoint(savepoint);
+                //롤백된 변경이 1차 캐시에 남아있을 수 있다.
+                MemberIdentityMap.clear();
+                results.add(TransferResult.failure(transfer, e));
+            } finally {
+                status.releaseSavepoint(savepoint);
+            }
+        }
+        return results;
+    }
+}
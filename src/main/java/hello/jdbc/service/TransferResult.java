@@ -0,0 +1,32 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Transfer;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 이체 한 건의 결과
+ * 실패하면 해당 이체만 롤백되고 원인 예외를 담는다.
+ */
+@Getter
+@ToString
+public class TransferResult {
+
+    private final Transfer transfer;
+    private final boolean success;
+    private final RuntimeException error;
+
+    private TransferResult(Transfer transfer, boolean success, RuntimeException error) {
+        this.transfer = transfer;
+        this.success = success;
+        this.error = error;
+    }
+
+    public static TransferResult success(Transfer transfer) {
+        return new TransferResult(transfer, true, null);
+    }
+
+    public static TransferResult failure(Transfer transfer, RuntimeException error) {
+        return new TransferResult(transfer, false, error);
+    }
+}
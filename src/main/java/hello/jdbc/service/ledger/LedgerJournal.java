@@ -0,0 +1,114 @@
+package hello.jdbc.service.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 반영된 이체를 순서대로 기록하는 append-only 파일
+ * 레코드 : sequence(long), fromId(UTF), toId(UTF), money(int)
+ * DB 에 flush 되기 전에 죽으면 다음 시작 때 checkpoint 이후 레코드를 다시 반영한다.
+ */
+@Slf4j
+class LedgerJournal implements AutoCloseable {
+
+    interface RecordConsumer {
+        void accept(long sequence, String fromId, String toId, int money);
+    }
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final boolean fsync;
+
+    /**
+     * 기존 내용을 지우고 새로 시작 (replay 가 끝나고 DB 에 반영된 다음에 호출)
+     */
+    LedgerJournal(Path path, boolean fsync) {
+        try {
+            this.file = new FileOutputStream(path.toFile(), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        this.fsync = fsync;
+    }
+
+    void append(long sequence, String fromId, String toId, int money) {
+        try {
+            out.writeLong(sequence);
+            out.writeUTF(fromId);
+            out.writeUTF(toId);
+            out.writeInt(money);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 지금까지 append 한 레코드를 OS 로 (fsync 면 디스크까지) 내보낸다.
+     */
+    void flush() {
+        try {
+            out.flush();
+            if (fsync) {
+                file.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * afterSequence 보다 큰 레코드를 순서대로 읽는다.
+     * 쓰다가 죽어서 잘린 마지막 레코드는 버린다.
+     * @return 읽은 마지막 sequence, 없으면 afterSequence
+     */
+    static long replay(Path path, long afterSequence, RecordConsumer consumer) {
+        if (!Files.exists(path)) {
+            return afterSequence;
+        }
+        long lastSequence = afterSequence;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                long sequence;
+                String fromId;
+                String toId;
+                int money;
+                try {
+                    sequence = in.readLong();
+                    fromId = in.readUTF();
+                    toId = in.readUTF();
+                    money = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (sequence > afterSequence) {
+                    consumer.accept(sequence, fromId, toId, money);
+                    lastSequence = sequence;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("journal replay after={}, last={}", afterSequence, lastSequence);
+        return lastSequence;
+    }
+}
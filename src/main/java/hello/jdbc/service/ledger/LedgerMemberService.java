@@ -0,0 +1,495 @@
+package hello.jdbc.service.ledger;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberService;
+import hello.jdbc.service.TransferResult;
+import hello.jdbc.service.netting.NetDeltaMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * 인메모리 원장 이체 (실시간 결제 경로)
+ *
+ * 잔액은 메모리에 두고 writer 스레드 하나만 읽고 쓴다. (락 없음)
+ * 요청 스레드는 미리 만들어둔 ring buffer 칸에 이체를 적고 결과를 기다린다. (이체마다 객체 생성 없음)
+ * writer 는 반영한 이체를 저널에 기록하고, 저널을 flush 한 다음 결과를 알려준다.
+ * 바뀐 잔액은 flusher 스레드가 flushInterval 마다 계좌별 순증감으로 모아서 MemberRepositoryV5.addMoneyAll() 로 반영하고,
+ * 같은 트랜잭션에서 ledger_checkpoint 에 마지막 sequence 를 기록한다.
+ *
+ * 시작할 때 member 테이블 잔액을 읽고, 저널에서 checkpoint 이후 이체를 다시 반영한다. (죽기 전에 DB 에 못 쓴 변경)
+ * 주의! 이 서비스가 떠 있는 동안 member 잔액은 이 서비스로만 변경해야 한다.
+ */
+@Slf4j
+public class LedgerMemberService implements MemberService, AutoCloseable {
+
+    public static final int DEFAULT_RING_SIZE = 1024;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(100);
+    //close() 가 DB 반영을 기다리는 최대 시간
+    public static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+    //순증감이 쌓인 계좌가 이만큼 되면 flushInterval 전이라도 flush
+    private static final int FLUSH_MAX_ACCOUNTS = 10_000;
+
+    //결과 코드
+    static final int OK = 0;
+    static final int INSUFFICIENT = 1;
+    static final int FROM_NOT_FOUND = 2;
+    static final int TO_NOT_FOUND = 3;
+    static final int VALIDATION_FAILED = 4;
+    static final int INVALID = 5;
+
+    private final MemberRepositoryV5 memberRepository;
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate;
+    private final long flushIntervalNanos;
+
+    private final TransferSlot[] ring;
+    private final int mask;
+    private final AtomicLong claimSequence;
+
+    //writer 스레드 전용 (close() 에서는 writer 가 끝난 다음에만 사용)
+    private final NetDeltaMap balances = new NetDeltaMap();
+    private final NetDeltaMap pendingDeltas = new NetDeltaMap();
+    private final LedgerJournal journal;
+    private long nextSequence;
+    private long pendingLastSequence;
+    private long handedOffSequence;
+    private long lastFlushNanos = System.nanoTime();
+
+    //writer => flusher, flusher 가 DB 에 반영하면 null
+    private volatile FlushBatch flushing;
+    //DB 에 반영된 마지막 sequence (checkpoint)
+    private volatile long flushedSequence;
+    //writer 가 예외로 멈췄으면 그 예외
+    private volatile Throwable writerFailure;
+    private volatile boolean closed;
+    private volatile boolean writerSleeping;
+    private volatile boolean flusherStopped;
+    private final Thread writer;
+    private final Thread flusher;
+
+    private static class FlushBatch {
+        private final String[] memberIds;
+        private final long[] deltas;
+        private final int count;
+        private final long lastSequence;
+
+        private FlushBatch(String[] memberIds, long[] deltas, int count, long lastSequence) {
+            this.memberIds = memberIds;
+            this.deltas = deltas;
+            this.count = count;
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    public LedgerMemberService(DataSource dataSource, MemberRepositoryV5 memberRepository, Path journalPath) {
+        this(dataSource, memberRepository, journalPath, DEFAULT_RING_SIZE, DEFAULT_FLUSH_INTERVAL, false);
+    }
+
+    /**
+     * @param ringSize      2의 거듭제곱
+     * @param flushInterval 잔액 변경을 DB 에 반영하는 주기
+     * @param fsync         저널을 디스크까지 기록 (OS 장애 대비, 느림)
+     */
+    public LedgerMemberService(DataSource dataSource, MemberRepositoryV5 memberRepository, Path journalPath,
+                               int ringSize, Duration flushInterval, boolean fsync) {
+        if (ringSize < 1 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("ringSize must be a power of two ringSize=" + ringSize);
+        }
+        this.memberRepository = memberRepository;
+        this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.flushIntervalNanos = flushInterval.toNanos();
+
+        long lastSequence = recover(journalPath);
+        this.journal = new LedgerJournal(journalPath, fsync);
+        this.nextSequence = lastSequence + 1;
+        this.pendingLastSequence = lastSequence;
+        this.handedOffSequence = lastSequence;
+        this.flushedSequence = lastSequence;
+        this.claimSequence = new AtomicLong(nextSequence);
+
+        this.ring = new TransferSlot[ringSize];
+        this.mask = ringSize - 1;
+        for (int i = 0; i < ringSize; i++) {
+            //칸 i 를 처음 쓰는 sequence 의 앞 바퀴
+            long firstSequence = nextSequence + ((i - nextSequence) & mask);
+            ring[i] = new TransferSlot(firstSequence - ringSize);
+        }
+
+        this.writer = new Thread(this::writeLoop, "ledger-writer");
+        this.flusher = new Thread(this::flushLoop, "ledger-flusher");
+        writer.setDaemon(true);
+        flusher.setDaemon(true);
+        writer.start();
+        flusher.start();
+    }
+
+    @Override
+    public void accountTransFer(String fromId, String toId, int money) {
+        bizLogic(fromId, toId, money);
+    }
+
+    @Override
+    public void bizLogic(String fromId, String toId, int money) {
+        int resultCode = submit(fromId, toId, money);
+        if (resultCode != OK) {
+            throw failure(resultCode, fromId, toId);
+        }
+    }
+
+    /**
+     * 이체마다 따로 반영되므로 세이브포인트 없이도 실패한 건만 빠진다.
+     */
+    @Override
+    public List<TransferResult> accountTransferAll(List<Transfer> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            int resultCode = submit(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+            results.add(resultCode == OK
+                    ? TransferResult.success(transfer)
+                    : TransferResult.failure(transfer, failure(resultCode, transfer.getFromId(), transfer.getToId())));
+        }
+        return results;
+    }
+
+    /**
+     * DB 에 반영된 마지막 sequence, 이후 이체는 아직 메모리와 저널에만 있다.
+     */
+    public long getFlushedSequence() {
+        return flushedSequence;
+    }
+
+    /**
+     * 새 요청을 받지 않고, 받은 요청을 모두 처리하고 DB 에 반영한 다음 종료 (DEFAULT_CLOSE_TIMEOUT 까지 대기)
+     */
+    @Override
+    public void close() throws InterruptedException {
+        close(DEFAULT_CLOSE_TIMEOUT);
+    }
+
+    /**
+     * timeout 안에 DB 에 반영하지 못하면(DB 장애 등) 더 기다리지 않고 스레드를 멈춘 다음 IllegalStateException
+     * 반영하지 못한 이체는 저널에 남아있으므로 다시 시작할 때 복구된다. (recover)
+     */
+    public void close(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        closed = true;
+        LockSupport.unpark(writer);
+        if (!join(writer, deadline)) {
+            //writer 가 아직 저널에 쓰고 있으므로 저널은 닫지 않는다.
+            stopFlusher(deadline);
+            throw new IllegalStateException("ledger writer did not stop in " + timeout + ", flushedSequence=" + flushedSequence);
+        }
+        //writer 가 끝났으므로 이 스레드에서 남은 순증감을 넘긴다.
+        boolean flushed = awaitFlushed(deadline);
+        if (flushed && pendingLastSequence > handedOffSequence) {
+            handOff();
+            flushed = awaitFlushed(deadline);
+        }
+        stopFlusher(deadline);
+        journal.close();
+        if (!flushed) {
+            throw new IllegalStateException("ledger closed before DB flush in " + timeout + ", flushedSequence=" + flushedSequence
+                    + ", lastSequence=" + pendingLastSequence, writerFailure);
+        }
+        if (writerFailure != null) {
+            throw new IllegalStateException("ledger writer failed, flushedSequence=" + flushedSequence, writerFailure);
+        }
+    }
+
+    /**
+     * 장애 흉내 (테스트용) : DB 에 반영하지 않고 바로 멈춘다.
+     */
+    void halt() throws InterruptedException {
+        long deadline = System.nanoTime() + DEFAULT_CLOSE_TIMEOUT.toNanos();
+        closed = true;
+        LockSupport.unpark(writer);
+        join(writer, deadline);
+        stopFlusher(deadline);
+        journal.close();
+    }
+
+    /**
+     * flusher 는 DB 호출 중이면 그 호출이 끝난 다음 멈춘다. deadline 까지만 기다린다.
+     */
+    private void stopFlusher(long deadline) throws InterruptedException {
+        flusherStopped = true;
+        LockSupport.unpark(flusher);
+        join(flusher, deadline);
+    }
+
+    /**
+     * @return deadline 전에 스레드가 끝났으면 true
+     */
+    private static boolean join(Thread thread, long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+        }
+        return !thread.isAlive();
+    }
+
+    private int submit(String fromId, String toId, int money) {
+        if (closed) {
+            throw new RejectedExecutionException("ledger closed");
+        }
+        long sequence = claimSequence.getAndIncrement();
+        TransferSlot slot = ring[(int) (sequence & mask)];
+        //ring 이 가득 찼으면 앞 바퀴 요청자가 결과를 가져갈 때까지 대기
+        while (slot.freedSequence != sequence - ring.length) {
+            checkWriterAlive();
+            Thread.onSpinWait();
+        }
+        slot.fromId = fromId;
+        slot.toId = toId;
+        slot.money = money;
+        slot.waiter = Thread.currentThread();
+        //close() 와 겹친 요청도 칸은 끝까지 거쳐야 writer 가 다음 sequence 로 넘어갈 수 있다.
+        slot.cancelled = closed;
+        slot.publishedSequence = sequence;
+        if (writerSleeping) {
+            LockSupport.unpark(writer);
+        }
+
+        while (slot.completedSequence != sequence) {
+            checkWriterAlive();
+            LockSupport.parkNanos(this, 1_000_000);
+        }
+        int resultCode = slot.resultCode;
+        boolean cancelled = slot.cancelled;
+        slot.fromId = null;
+        slot.toId = null;
+        slot.waiter = null;
+        slot.freedSequence = sequence;
+        if (cancelled) {
+            throw new RejectedExecutionException("ledger closed");
+        }
+        return resultCode;
+    }
+
+    private void checkWriterAlive() {
+        if (!writer.isAlive()) {
+            throw new IllegalStateException("ledger writer stopped");
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                long first = nextSequence;
+                TransferSlot slot;
+                while (nextSequence - first < ring.length
+                        && (slot = ring[(int) (nextSequence & mask)]).publishedSequence == nextSequence) {
+                    if (!slot.cancelled) {
+                        slot.resultCode = apply(slot.fromId, slot.toId, slot.money);
+                        if (slot.resultCode == OK) {
+                            journal.append(nextSequence, slot.fromId, slot.toId, slot.money);
+                            pendingLastSequence = nextSequence;
+                        }
+                    }
+                    nextSequence++;
+                }
+                if (nextSequence > first) {
+                    //저널에 기록된 다음에 결과를 알려준다. (group commit)
+                    journal.flush();
+                    for (long sequence = first; sequence < nextSequence; sequence++) {
+                        TransferSlot completed = ring[(int) (sequence & mask)];
+                        Thread waiter = completed.waiter;
+                        completed.completedSequence = sequence;
+                        LockSupport.unpark(waiter);
+                    }
+                }
+                if (isFlushDue()) {
+                    handOff();
+                }
+                if (nextSequence == first) {
+                    if (closed && nextSequence == claimSequence.get()) {
+                        break;
+                    }
+                    idle();
+                }
+            }
+        } catch (Throwable e) {
+            //요청 스레드는 checkWriterAlive() 로 알게 되고, close() 에서 다시 알린다.
+            writerFailure = e;
+            log.error("ledger writer failed nextSequence={}", nextSequence, e);
+        }
+    }
+
+    private void idle() {
+        writerSleeping = true;
+        if (!closed && ring[(int) (nextSequence & mask)].publishedSequence != nextSequence) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+        }
+        writerSleeping = false;
+    }
+
+    /**
+     * writer 스레드에서만 호출, 락 없이 잔액 변경
+     */
+    private int apply(String fromId, String toId, int money) {
+        if (money <= 0 || fromId.equals(toId)) {
+            return INVALID;
+        }
+        if (!balances.containsKey(fromId)) {
+            return FROM_NOT_FOUND;
+        }
+        if (!balances.containsKey(toId)) {
+            return TO_NOT_FOUND;
+        }
+        if (toId.equals("ex")) {
+            return VALIDATION_FAILED;
+        }
+        if (balances.get(fromId) < money) {
+            return INSUFFICIENT;
+        }
+        //money 컬럼이 int
+        if (balances.get(toId) + money > Integer.MAX_VALUE) {
+            return INVALID;
+        }
+        balances.add(fromId, -money);
+        balances.add(toId, money);
+        pendingDeltas.add(fromId, -money);
+        pendingDeltas.add(toId, money);
+        return OK;
+    }
+
+    private boolean isFlushDue() {
+        if (pendingLastSequence == handedOffSequence || flushing != null) {
+            return false;
+        }
+        return pendingDeltas.size() >= FLUSH_MAX_ACCOUNTS || System.nanoTime() - lastFlushNanos >= flushIntervalNanos;
+    }
+
+    /**
+     * 쌓인 순증감을 flusher 에게 넘기고 비운다. (flushing == null 일 때만)
+     */
+    private void handOff() {
+        String[] memberIds = pendingDeltas.sortedKeys();
+        long[] deltas = new long[memberIds.length];
+        int count = 0;
+        for (String memberId : memberIds) {
+            long delta = pendingDeltas.get(memberId);
+            if (delta != 0) {
+                memberIds[count] = memberId;
+                deltas[count] = delta;
+                count++;
+            }
+        }
+        flushing = new FlushBatch(memberIds, deltas, count, pendingLastSequence);
+        handedOffSequence = pendingLastSequence;
+        pendingDeltas.clear();
+        lastFlushNanos = System.nanoTime();
+        LockSupport.unpark(flusher);
+    }
+
+    /**
+     * @return deadline 전에 넘긴 순증감이 DB 에 반영되었으면 true
+     */
+    private boolean awaitFlushed(long deadline) {
+        while (flushing != null && flusher.isAlive()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, 1_000_000);
+        }
+        return flushing == null;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            FlushBatch batch = flushing;
+            if (batch == null) {
+                if (flusherStopped) {
+                    return;
+                }
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                continue;
+            }
+            try {
+                persist(batch);
+                flushedSequence = batch.lastSequence;
+                flushing = null;
+            } catch (RuntimeException e) {
+                //DB 장애 => 같은 batch 를 다시 시도, 그동안 writer 는 다음 순증감을 계속 모은다.
+                log.error("ledger flush failed lastSequence={}, retry", batch.lastSequence, e);
+                if (flusherStopped) {
+                    return;
+                }
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    private void persist(FlushBatch batch) {
+        txTemplate.executeWithoutResult(status -> {
+            //순증감이 모두 0 이어도 checkpoint 는 기록한다.
+            if (batch.count > 0) {
+                List<String> rejectedIds = memberRepository.addMoneyAll(batch.memberIds, batch.deltas, batch.count);
+                if (!rejectedIds.isEmpty()) {
+                    throw new IllegalStateException("DB 잔액이 원장과 다릅니다. memberIds=" + rejectedIds);
+                }
+            }
+            template.update("update ledger_checkpoint set last_sequence=? where id=1", batch.lastSequence);
+        });
+        log.debug("ledger flush accounts={}, lastSequence={}", batch.count, batch.lastSequence);
+    }
+
+    /**
+     * DB 잔액 + checkpoint 이후 저널 => 메모리 잔액, 저널에만 있던 변경은 바로 DB 에 반영
+     * @return 마지막으로 반영된 sequence
+     */
+    private long recover(Path journalPath) {
+        template.update("insert into ledger_checkpoint(id, last_sequence) select 1, 0 " +
+                "where not exists (select 1 from ledger_checkpoint where id=1)");
+        long checkpoint = template.queryForObject("select last_sequence from ledger_checkpoint where id=1", Long.class);
+
+        try (Stream<Member> members = memberRepository.streamAll()) {
+            members.forEach(member -> balances.add(member.getMemberId(), member.getMoney()));
+        }
+        long lastSequence = LedgerJournal.replay(journalPath, checkpoint, (sequence, fromId, toId, money) -> {
+            int resultCode = apply(fromId, toId, money);
+            if (resultCode != OK) {
+                log.warn("journal replay skipped sequence={}, resultCode={}", sequence, resultCode);
+            }
+        });
+        if (lastSequence > checkpoint) {
+            pendingLastSequence = lastSequence;
+            handOff();
+            persist(flushing);
+            flushing = null;
+        }
+        log.info("ledger recovered accounts={}, checkpoint={}, lastSequence={}", balances.size(), checkpoint, lastSequence);
+        return lastSequence;
+    }
+
+    private static RuntimeException failure(int resultCode, String fromId, String toId) {
+        switch (resultCode) {
+            case INSUFFICIENT:
+                return new IllegalStateException("잔액 부족 fromId=" + fromId);
+            case FROM_NOT_FOUND:
+                return new IllegalStateException("회원 없음 fromId=" + fromId);
+            case TO_NOT_FOUND:
+                return new IllegalStateException("회원 없음 toId=" + toId);
+            case VALIDATION_FAILED:
+                return new IllegalStateException("이체중 예외 발생");
+            default:
+                return new IllegalArgumentException("잘못된 이체 fromId=" + fromId + ", toId=" + toId);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package hello.jdbc.service.ledger;
+
+/**
+ * ring buffer 한 칸, 미리 만들어두고 재사용한다.
+ *
+ * 칸 하나의 흐름 (sequence 기준)
+ * 생산자 : freedSequence == sequence - 크기 가 될 때까지 대기 => 값 기록 => publishedSequence = sequence
+ * writer : 처리 => 저널 flush => completedSequence = sequence
+ * 생산자 : 결과 읽음 => freedSequence = sequence (다음 바퀴 생산자가 사용 가능)
+ */
+final class TransferSlot {
+
+    String fromId;
+    String toId;
+    int money;
+    Thread waiter;
+    //close() 이후 받은 요청, writer 는 처리하지 않는다.
+    boolean cancelled;
+    int resultCode;
+
+    volatile long publishedSequence = -1;
+    volatile long completedSequence = -1;
+    volatile long freedSequence;
+
+    TransferSlot(long initialFreedSequence) {
+        this.freedSequence = initialFreedSequence;
+    }
+}
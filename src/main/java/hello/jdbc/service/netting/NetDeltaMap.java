@@ -0,0 +1,132 @@
+package hello.jdbc.service.netting;
+
+import java.util.Arrays;
+
+/**
+ * memberId -> 순증감(long) open addressing 해시맵
+ * Map<String, Integer> 와 달리 값을 박싱하지 않고 Entry 객체도 만들지 않는다. (키 배열 + long 배열, 선형 탐사)
+ * 삭제는 지원하지 않는다.
+ */
+public class NetDeltaMap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    //채움 비율이 이 값을 넘으면 두배로 늘린다.
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private long[] values;
+    private int size;
+
+    public NetDeltaMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 예상 키 개수, 재해싱 없이 담을 수 있도록 미리 잡는다.
+     */
+    public NetDeltaMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new String[capacity];
+        values = new long[capacity];
+    }
+
+    public interface EntryConsumer {
+        void accept(String memberId, long delta);
+    }
+
+    /**
+     * memberId 의 값에 delta 를 더한다. 없으면 0 에서 시작
+     */
+    public void add(String memberId, long delta) {
+        int index = indexOf(memberId);
+        if (keys[index] == null) {
+            keys[index] = memberId;
+            size++;
+        }
+        values[index] += delta;
+        if (size > keys.length * LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    /**
+     * 없으면 0
+     */
+    public long get(String memberId) {
+        int index = indexOf(memberId);
+        return keys[index] == null ? 0 : values[index];
+    }
+
+    public boolean containsKey(String memberId) {
+        return keys[indexOf(memberId)] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 배열은 그대로 두고 비운다. (재사용)
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * memberId 오름차순 키 목록 (락 순서를 고정할 때 사용)
+     */
+    public String[] sortedKeys() {
+        String[] result = new String[size];
+        int count = 0;
+        for (String key : keys) {
+            if (key != null) {
+                result[count++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * 키가 있는 칸 또는 들어갈 빈 칸
+     */
+    private int indexOf(String memberId) {
+        int mask = keys.length - 1;
+        int index = mix(memberId.hashCode()) & mask;
+        while (keys[index] != null && !keys[index].equals(memberId)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new String[oldKeys.length << 1];
+        values = new long[oldValues.length << 1];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * String.hashCode() 하위 비트 편중을 줄인다. (HashMap 과 같은 방식)
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
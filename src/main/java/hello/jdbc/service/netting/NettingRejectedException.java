@@ -0,0 +1,20 @@
+package hello.jdbc.service.netting;
+
+import java.util.List;
+
+/**
+ * 순증감을 반영하면 잔액이 음수가 되거나 없는 회원 => 배치 전체 롤백
+ */
+public class NettingRejectedException extends IllegalStateException {
+
+    private final List<String> rejectedIds;
+
+    public NettingRejectedException(List<String> rejectedIds) {
+        super("잔액 부족 또는 회원 없음 memberIds=" + rejectedIds);
+        this.rejectedIds = List.copyOf(rejectedIds);
+    }
+
+    public List<String> getRejectedIds() {
+        return rejectedIds;
+    }
+}
@@ -0,0 +1,24 @@
+package hello.jdbc.service.netting;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 상계 결과
+ * transferCount 건의 이체가 updatedCount 개 계좌의 update 로 줄었다.
+ */
+@Getter
+@ToString
+public class NettingResult {
+
+    private final int transferCount;
+    private final int accountCount;
+    //순증감이 0 이 아니라서 실제로 update 한 계좌 수
+    private final int updatedCount;
+
+    public NettingResult(int transferCount, int accountCount, int updatedCount) {
+        this.transferCount = transferCount;
+        this.accountCount = accountCount;
+        this.updatedCount = updatedCount;
+    }
+}
@@ -0,0 +1,90 @@
+package hello.jdbc.service.netting;
+
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.InClauseSupport;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 상계(netting) 이체
+ * 정산 배치의 이체들을 계좌별 순증감 하나로 합친 다음 money = money + ? batch update 한번으로 반영한다.
+ * A->B 100, B->A 70 => A -30, B +30 (update 4번 => 2번)
+ *
+ * 개별 이체의 성공/실패가 없는 전부 아니면 전부 방식, 하나라도 음수 잔액이 되면 전체 롤백
+ * 이체 순서와 상관없이 최종 잔액만 본다. (중간에 잠깐 음수가 되는 순서도 허용)
+ * 순증감이 0 이라 update 하지 않는 계좌도 있는지 조회해서, 없는 회원이 있으면 전체 롤백
+ */
+@Slf4j
+public class NettingTransferService {
+
+    private final TransactionTemplate txTemplate;
+    private final MemberRepositoryV5 memberRepository;
+
+    public NettingTransferService(PlatformTransactionManager transactionManager, MemberRepositoryV5 memberRepository) {
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.memberRepository = memberRepository;
+    }
+
+    public NettingResult settle(List<Transfer> transfers) {
+        NetDeltaMap deltas = net(transfers);
+        //memberId 순서로 update => 다른 배치, MemberServiceV7 과 락 순서가 같다.
+        String[] memberIds = deltas.sortedKeys();
+        String[] updateIds = new String[memberIds.length];
+        long[] updateDeltas = new long[memberIds.length];
+        int updateCount = 0;
+        List<String> unchangedIds = new ArrayList<>();
+        for (String memberId : memberIds) {
+            long delta = deltas.get(memberId);
+            if (delta == 0) {
+                unchangedIds.add(memberId);
+                continue;
+            }
+            if (delta < Integer.MIN_VALUE || delta > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("순증감이 int 범위를 넘습니다. memberId=" + memberId + ", delta=" + delta);
+            }
+            updateIds[updateCount] = memberId;
+            updateDeltas[updateCount] = delta;
+            updateCount++;
+        }
+
+        int count = updateCount;
+        txTemplate.executeWithoutResult(status -> {
+            List<String> rejectedIds = new ArrayList<>(memberRepository.addMoneyAll(updateIds, updateDeltas, count));
+            //update 하지 않는 계좌는 update 건수로 알 수 없으므로 조회로 확인
+            if (!unchangedIds.isEmpty()) {
+                rejectedIds.addAll(InClauseSupport.missingIds(unchangedIds, memberRepository.findAllById(unchangedIds)));
+            }
+            if (!rejectedIds.isEmpty()) {
+                Collections.sort(rejectedIds);
+                throw new NettingRejectedException(rejectedIds);
+            }
+        });
+        NettingResult result = new NettingResult(transfers.size(), memberIds.length, updateCount);
+        log.info("netting {}", result);
+        return result;
+    }
+
+    /**
+     * 이체 목록 => 계좌별 순증감
+     */
+    static NetDeltaMap net(List<Transfer> transfers) {
+        NetDeltaMap deltas = new NetDeltaMap(transfers.size() * 2);
+        for (Transfer transfer : transfers) {
+            if (transfer.getMoney() <= 0) {
+                throw new IllegalArgumentException("이체 금액은 0 보다 커야 합니다. transfer=" + transfer);
+            }
+            if (transfer.getFromId().equals(transfer.getToId())) {
+                throw new IllegalArgumentException("같은 계좌로 이체할 수 없습니다. transfer=" + transfer);
+            }
+            deltas.add(transfer.getFromId(), -transfer.getMoney());
+            deltas.add(transfer.getToId(), transfer.getMoney());
+        }
+        return deltas;
+    }
+}
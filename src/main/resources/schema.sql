@@ -0,0 +1,59 @@
+--애플리케이션이 쓰는 테이블 정의, 여러 번 실행해도 된다. (있는 데이터는 지우지 않는다)
+--스프링 부트 : 시작할 때 실행 (spring.sql.init.mode=always)
+--스프링 없이 만드는 테스트 : TestDataSources.pooled() 가 처음 한번 실행
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+
+--낙관적 락 버전 (MemberServiceV7), 변경할 때마다 1 증가. 이전에 만든 member 테이블에도 추가
+alter table member add column if not exists version bigint not null default 0;
+
+--HiLoMemberIdGenerator 의 hi 값, 값 하나가 memberId blockSize 개
+create sequence if not exists member_id_seq start with 1;
+
+--SlottedMemberRepository 인기 계좌의 입금 slot, 잔액 = member.money + slot 합계
+create table if not exists member_slot (
+    member_id varchar(10),
+    slot int,
+    money integer not null default 0,
+    version bigint not null default 0,
+    primary key (member_id, slot)
+);
+
+--LedgerMemberService 가 DB 에 반영한 마지막 저널 sequence (id=1 한 행)
+create table if not exists ledger_checkpoint (
+    id int primary key,
+    last_sequence bigint not null
+);
+
+--MemberServiceV6 의 서버 측 이체 함수, 반환 코드 0 : 성공, 1 : 잔액 부족(보내는 회원 없음), 2 : 받는 회원 없음, 3 : 0 이하 금액
+--0 이하 금액은 출금 조건(money>=?)을 통과해서 받는 쪽 잔액을 빼앗으므로 아무것도 변경하지 않는다.
+--받는 회원이 없으면 아무것도 변경하지 않고, 입금 중 회원이 삭제되었으면 예외 => 문장 전체 롤백
+--함수 본문이 바뀌었을 수 있으므로 항상 다시 등록 (H2 서버가 JDK 로 실행되어야 컴파일된다)
+drop alias if exists TRANSFER;
+create alias TRANSFER as '
+@CODE
+int transfer(java.sql.Connection con, String fromId, String toId, int money) throws java.sql.SQLException {
+    if (money <= 0) return 3;
+    try (java.sql.PreparedStatement pstmt = con.prepareStatement("select 1 from member where member_id=?")) {
+        pstmt.setString(1, toId);
+        try (java.sql.ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) return 2;
+        }
+    }
+    try (java.sql.PreparedStatement pstmt = con.prepareStatement("update member set money=money-?, version=version+1 where member_id=? and money>=?")) {
+        pstmt.setInt(1, money);
+        pstmt.setString(2, fromId);
+        pstmt.setInt(3, money);
+        if (pstmt.executeUpdate() == 0) return 1;
+    }
+    try (java.sql.PreparedStatement pstmt = con.prepareStatement("update member set money=money+?, version=version+1 where member_id=?")) {
+        pstmt.setInt(1, money);
+        pstmt.setString(2, toId);
+        if (pstmt.executeUpdate() == 0) throw new java.sql.SQLException("member not found toId=" + toId);
+    }
+    return 0;
+}
+';
@@ -0,0 +1,115 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.service.MemberServiceV3_1;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StatementCachingDataSourceTest {
+
+    HikariDataSource hikariDataSource;
+    StatementCachingDataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() {
+        hikariDataSource = new HikariDataSource();
+        hikariDataSource.setJdbcUrl(URL);
+        hikariDataSource.setUsername(USERNAME);
+        hikariDataSource.setPassword(PASSWORD);
+        //물리 커넥션 하나 => 같은 캐시를 계속 사용
+        hikariDataSource.setMaximumPoolSize(1);
+
+        dataSource = new StatementCachingDataSource(hikariDataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        hikariDataSource.close();
+    }
+
+    @Test
+    void cacheHit() {
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+        repository.save(new Member("cacheA", 10000));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(repository.findById("cacheA").getMoney()).isEqualTo(10000);
+        }
+        repository.delete("cacheA");
+
+        log.info("hit={}, miss={}, ratio={}", dataSource.getHitCount(), dataSource.getMissCount(), dataSource.getHitRatio());
+        //insert, select, delete 3번만 prepare
+        assertThat(dataSource.getMissCount()).isEqualTo(3);
+        assertThat(dataSource.getHitCount()).isEqualTo(9);
+    }
+
+    @Test
+    void transactionSynchronization() throws SQLException {
+        //트랜잭션 매니저도 같은 DataSource 를 사용해야 같은 커넥션이 동기화된다.
+        MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+        MemberServiceV3_1 service = new MemberServiceV3_1(new DataSourceTransactionManager(dataSource), repository);
+        repository.save(new Member("cacheA", 10000));
+        repository.save(new Member("cacheB", 10000));
+
+        service.accountTransFer("cacheA", "cacheB", 2000);
+
+        assertThat(repository.findById("cacheA").getMoney()).isEqualTo(8000);
+        assertThat(repository.findById("cacheB").getMoney()).isEqualTo(12000);
+        assertThat(dataSource.getHitCount()).isGreaterThan(0);
+
+        repository.delete("cacheA");
+        repository.delete("cacheB");
+    }
+
+    @Test
+    void closedConnectionWithoutPool() throws SQLException {
+        //풀이 없으면 close() 가 물리 커넥션을 닫는다.
+        StatementCachingDataSource noPool = new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+
+        for (int i = 0; i < 3; i++) {
+            Connection con = noPool.getConnection();
+            PreparedStatement pstmt = con.prepareStatement("select 1");
+            pstmt.executeQuery().close();
+            pstmt.close();
+            assertThat(noPool.getCachedConnectionCount()).isEqualTo(1);
+
+            con.close();
+            assertThat(noPool.getCachedConnectionCount()).isZero();
+        }
+    }
+
+    @Test
+    void closedConnectionInPool() throws Exception {
+        Connection con = dataSource.getConnection();
+        Connection physical = con.unwrap(Connection.class);
+        con.prepareStatement("select 1").close();
+        con.close();
+        assertThat(dataSource.getCachedConnectionCount()).isEqualTo(1);
+
+        //풀이 물리 커넥션을 교체 (maxLifetime 만료와 같음)
+        hikariDataSource.getHikariPoolMXBean().softEvictConnections();
+        for (int i = 0; i < 50 && !physical.isClosed(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(physical.isClosed()).isTrue();
+
+        //새 물리 커넥션이 들어올 때 닫힌 커넥션의 캐시를 버린다.
+        dataSource.getConnection().close();
+        assertThat(dataSource.getCachedConnectionCount()).isEqualTo(1);
+    }
+}
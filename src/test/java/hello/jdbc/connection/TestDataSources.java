@@ -0,0 +1,34 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+/**
+ * 스프링 없이 만드는 테스트용 커넥션 풀 (ConnectionConst 의 H2 서버)
+ * JVM 에서 처음 만들 때 한번 schema.sql 을 실행한다. 다 쓴 풀은 테스트가 close() 해야 한다.
+ */
+public abstract class TestDataSources {
+
+    private static boolean schemaInitialized;
+
+    public static HikariDataSource pooled() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        initSchema(dataSource);
+        return dataSource;
+    }
+
+    private static synchronized void initSchema(DataSource dataSource) {
+        if (!schemaInitialized) {
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+            schemaInitialized = true;
+        }
+    }
+}
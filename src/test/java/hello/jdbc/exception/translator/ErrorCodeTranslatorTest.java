@@ -0,0 +1,115 @@
+package hello.jdbc.exception.translator;
+
+import hello.jdbc.repository.ErrorCodeTranslator;
+import hello.jdbc.repository.ex.MyDbException;
+import hello.jdbc.repository.ex.MyDuplicateKeyException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+
+import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@Slf4j
+public class ErrorCodeTranslatorTest {
+
+    DataSource dataSource;
+    ErrorCodeTranslator exTranslator;
+
+    @BeforeEach
+    void init() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        exTranslator = ErrorCodeTranslator.of(dataSource);
+    }
+
+    @Test
+    void sameTranslatorPerDataSource() {
+        assertThat(ErrorCodeTranslator.of(dataSource)).isSameAs(exTranslator);
+    }
+
+    @Test
+    void badSqlGrammar() {
+        String sql = "select bad grammar";
+
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement stmt = con.prepareStatement(sql)) {
+            stmt.executeQuery();
+            fail("bad grammar");
+        } catch (SQLException e) {
+            DataAccessException resultEx = exTranslator.translate("select", sql, e);
+            log.info("resultEx", resultEx);
+            assertThat(resultEx).isInstanceOf(BadSqlGrammarException.class);
+        }
+    }
+
+    @Test
+    void sameResultAsSpringTranslator() {
+        SQLErrorCodeSQLExceptionTranslator springTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        //h2 : 키 중복, 락 타임아웃, 코드표에 없는 코드(SQLState 로 변환)
+        SQLException[] exceptions = {
+                new SQLException("duplicate", "23505", 23505),
+                new SQLException("lock timeout", "HYT00", 50200),
+                new SQLException("unknown", "08001", 1)};
+
+        for (SQLException e : exceptions) {
+            assertThat(exTranslator.translate("task", "sql", e).getClass())
+                    .isEqualTo(springTranslator.translate("task", "sql", e).getClass());
+        }
+        assertThat(exTranslator.translate("task", "sql", exceptions[0])).isInstanceOf(DuplicateKeyException.class);
+        assertThat(exTranslator.translate("task", "sql", exceptions[1])).isInstanceOf(CannotAcquireLockException.class);
+    }
+
+    @Test
+    void batchUpdateException() {
+        BatchUpdateException e = new BatchUpdateException("batch", new int[0]);
+        e.setNextException(new SQLException("duplicate", "23505", 23505));
+
+        assertThat(exTranslator.translate("saveAll", null, e)).isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void translateToMyDbException() {
+        MyDbException duplicate = exTranslator.translateToMyDbException(new SQLException("duplicate", "23505", 23505));
+        MyDbException other = exTranslator.translateToMyDbException(new SQLException("other", "42000", 42122));
+
+        assertThat(duplicate).isInstanceOf(MyDuplicateKeyException.class);
+        assertThat(other).isNotInstanceOf(MyDuplicateKeyException.class);
+    }
+
+    @Test
+    void resolveCodesAfterDbComesBack() {
+        AtomicBoolean down = new AtomicBoolean(true);
+        DataSource flaky = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (down.get()) {
+                    throw new SQLException("db down", "08001");
+                }
+                return super.getConnection();
+            }
+        };
+        //DB 장애 중에도 만들 수 있고, 코드표를 못 읽은 상태로 굳지 않는다.
+        ErrorCodeTranslator translator = ErrorCodeTranslator.of(flaky);
+        SQLException duplicate = new SQLException("duplicate", "23505", 23505);
+        assertThat(translator.isDuplicateKey(duplicate)).isFalse();
+
+        down.set(false);
+        assertThat(translator.isDuplicateKey(duplicate)).isTrue();
+        assertThat(translator.translate("task", "sql", duplicate)).isInstanceOf(DuplicateKeyException.class);
+    }
+}
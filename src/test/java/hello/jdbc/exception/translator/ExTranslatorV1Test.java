@@ -18,6 +18,7 @@ import java.sql.SQLException;
 import java.util.Random;
 
 import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
 
 @Slf4j
 public class ExTranslatorV1Test {
@@ -38,6 +39,18 @@ public class ExTranslatorV1Test {
         service.create("myId");
     }
 
+    @Test
+    void stacklessDuplicateKey() {
+        MyDbException.setStackTraceEnabled(false);
+        try {
+            MyDuplicateKeyException e = new MyDuplicateKeyException("duplicate");
+            assertThat(e.getStackTrace()).isEmpty();
+        } finally {
+            MyDbException.setStackTraceEnabled(true);
+        }
+        assertThat(new MyDuplicateKeyException("duplicate").getStackTrace()).isNotEmpty();
+    }
+
     @Slf4j
     @RequiredArgsConstructor
     static class Service {
@@ -0,0 +1,133 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class BloomFilterMemberRepositoryTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 delegate;
+    BloomFilterMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+
+        delegate = new MemberRepositoryV5(dataSource);
+        //시작 전에 있던 회원은 스캔으로 filter 에 들어간다.
+        delegate.save(new Member("bloomA", 1000));
+        repository = new BloomFilterMemberRepository(delegate, dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        delegate.delete("bloomA");
+        delegate.delete("bloomB");
+        new JdbcTemplate(dataSource).update("delete from member where member_id like 'bloomR%'");
+        dataSource.close();
+    }
+
+    @Test
+    void loadedAtStartup() {
+        assertThat(repository.findById("bloomA").getMoney()).isEqualTo(1000);
+        assertThat(repository.getFoundCount()).isEqualTo(1);
+    }
+
+    @Test
+    void missingMemberShortCircuit() {
+        assertThatThrownBy(() -> repository.findById("noMember"))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.findOptionalById("noMember")).isEmpty();
+        assertThat(repository.addMoney("noMember", 100)).isEqualTo(0);
+        assertThat(repository.findAllById(List.of("bloomA", "noMember"))).containsOnlyKeys("bloomA");
+
+        //filter 가 0.01 오탐률이므로 대부분 쿼리 없이 끝난다.
+        log.info("filtered={}, falsePositive={}", repository.getFilteredCount(), repository.getFalsePositiveCount());
+        assertThat(repository.getFilteredCount() + repository.getFalsePositiveCount()).isEqualTo(4);
+    }
+
+    @Test
+    void saveInTransaction() {
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.save(new Member("bloomB", 2000));
+            //같은 트랜잭션 안에서 바로 조회 가능
+            assertThat(repository.findById("bloomB").getMoney()).isEqualTo(2000);
+        });
+
+        assertThat(repository.mightExist("bloomB")).isTrue();
+        assertThat(repository.findById("bloomB").getMoney()).isEqualTo(2000);
+    }
+
+    @Test
+    void deleteAndRebuild() {
+        repository.delete("bloomA");
+        assertThat(repository.getDeletedSinceRebuild()).isEqualTo(1);
+        //삭제해도 filter 에는 남아있다.
+        assertThat(repository.mightExist("bloomA")).isTrue();
+
+        repository.rebuild();
+
+        assertThat(repository.getDeletedSinceRebuild()).isEqualTo(0);
+        assertThat(repository.findOptionalById("bloomA")).isEmpty();
+    }
+
+    @Test
+    void saveDuringRebuild() throws Exception {
+        int threadCount = 4;
+        int saveCount = 250;
+        AtomicBoolean saving = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount + 1);
+
+        //저장하는 동안 계속 filter 교체
+        Future<Integer> rebuilds = executor.submit(() -> {
+            int count = 0;
+            while (saving.get()) {
+                repository.rebuild();
+                count++;
+            }
+            return count;
+        });
+        List<Future<?>> savers = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            savers.add(executor.submit(() -> {
+                for (int i = 0; i < saveCount; i++) {
+                    repository.save(new Member("bloomR" + (thread * saveCount + i), 100));
+                }
+            }));
+        }
+        for (Future<?> saver : savers) {
+            saver.get();
+        }
+        saving.set(false);
+        log.info("rebuilds={}", rebuilds.get());
+        executor.shutdown();
+
+        //어느 filter 교체 중에 저장했어도 빠진 id 가 없어야 한다. (없는 회원으로 판단하면 안 됨)
+        for (int i = 0; i < threadCount * saveCount; i++) {
+            assertThat(repository.mightExist("bloomR" + i)).as("bloomR" + i).isTrue();
+        }
+    }
+}
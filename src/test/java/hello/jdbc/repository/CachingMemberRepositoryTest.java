@@ -0,0 +1,108 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class CachingMemberRepositoryTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 memberRepositoryV5;
+    CachingMemberRepository repository;
+    TransactionTemplate txTemplate;
+    //findAllById 가 DB 를 읽은 다음, 캐시에 넣기 전에 한번 실행
+    Runnable afterBulkLoad;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+        memberRepositoryV5 = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Map<String, Member> findAllById(Collection<String> memberIds) {
+                Map<String, Member> loaded = super.findAllById(memberIds);
+                Runnable hook = afterBulkLoad;
+                afterBulkLoad = null;
+                if (hook != null) {
+                    hook.run();
+                }
+                return loaded;
+            }
+        };
+        repository = new CachingMemberRepository(memberRepositoryV5);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("cacheA");
+        repository.delete("cacheB");
+        dataSource.close();
+    }
+
+    @Test
+    void readThrough() {
+        repository.save(new Member("cacheA", 10000));
+
+        repository.findById("cacheA");
+        repository.findById("cacheA");
+        log.info("stats={}", repository.getStats());
+
+        assertThat(repository.getStats().hitCount()).isEqualTo(1);
+        assertThat(repository.getStats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void evictAfterCommit() {
+        repository.save(new Member("cacheA", 10000));
+        repository.findById("cacheA");
+
+        txTemplate.executeWithoutResult(status -> repository.update("cacheA", 20000));
+
+        assertThat(repository.findById("cacheA").getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    void rollbackKeepsCache() {
+        repository.save(new Member("cacheA", 10000));
+        repository.findById("cacheA");
+
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            repository.update("cacheA", 20000);
+            //트랜잭션 안에서는 캐시를 거치지 않고 자기 변경을 본다.
+            assertThat(repository.findById("cacheA").getMoney()).isEqualTo(20000);
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(repository.findById("cacheA").getMoney()).isEqualTo(10000);
+        assertThat(memberRepositoryV5.findById("cacheA").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void bulkLoadDoesNotCacheEvictedValue() {
+        repository.save(new Member("cacheA", 10000));
+        repository.save(new Member("cacheB", 10000));
+
+        //bulk 로딩이 DB 를 읽은 직후 다른 요청이 변경
+        afterBulkLoad = () -> repository.update("cacheA", 20000);
+        Map<String, Member> loaded = repository.findAllById(List.of("cacheA", "cacheB"));
+        assertThat(loaded.get("cacheA").getMoney()).isEqualTo(10000);
+
+        //변경 전에 읽은 값은 캐시에 남지 않는다.
+        assertThat(repository.findById("cacheA").getMoney()).isEqualTo(20000);
+        assertThat(repository.findAllById(List.of("cacheA", "cacheB")).get("cacheA").getMoney()).isEqualTo(20000);
+    }
+}
@@ -0,0 +1,76 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class HiLoMemberIdGeneratorTest {
+
+    HikariDataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void uniqueIdsWithoutDbCallPerId() throws Exception {
+        HiLoMemberIdGenerator generator = new HiLoMemberIdGenerator(dataSource, 100, "M");
+        int threadCount = 4;
+        int idCount = 500;
+
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < idCount; j++) {
+                    ids.add(generator.nextId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(ids).hasSize(threadCount * idCount);
+        assertThat(ids).allMatch(id -> id.startsWith("M") && id.length() <= 10);
+        //100 건마다 시퀀스 한번
+        assertThat(generator.getAllocatedBlockCount()).isEqualTo(threadCount * idCount / 100);
+    }
+
+    @Test
+    void generatorsShareSequence() {
+        //같은 시퀀스를 쓰는 다른 인스턴스(다른 서버)와 겹치지 않는다.
+        HiLoMemberIdGenerator generatorA = new HiLoMemberIdGenerator(dataSource, 10, "M");
+        HiLoMemberIdGenerator generatorB = new HiLoMemberIdGenerator(dataSource, 10, "M");
+
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            ids.add(generatorA.nextId());
+            ids.add(generatorB.nextId());
+        }
+        assertThat(ids).hasSize(50);
+    }
+}
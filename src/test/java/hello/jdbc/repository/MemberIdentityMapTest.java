@@ -0,0 +1,68 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class MemberIdentityMapTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+    TransactionTemplate txTemplate;
+    //트랜잭션과 상관없는 다른 커넥션 (다른 DataSource 라서 트랜잭션 커넥션에 참여하지 않고, 호출마다 새 커넥션 + auto commit)
+    JdbcTemplate otherTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+        repository = new MemberRepositoryV5(dataSource);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        otherTemplate = new JdbcTemplate(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("mapA");
+        dataSource.close();
+    }
+
+    @Test
+    void sameTransactionReadsFromMap() {
+        repository.save(new Member("mapA", 10000));
+
+        txTemplate.executeWithoutResult(status -> {
+            assertThat(repository.findById("mapA").getMoney()).isEqualTo(10000);
+
+            //다른 커넥션에서 변경(커밋)해도 두번째 조회는 SELECT 없이 1차 캐시 값을 반환
+            otherTemplate.update("update member set money=? where member_id=?", 500, "mapA");
+            assertThat(otherTemplate.queryForObject("select money from member where member_id=?", Integer.class, "mapA"))
+                    .isEqualTo(500);
+            assertThat(repository.findById("mapA").getMoney()).isEqualTo(10000);
+
+            //절대값 update 는 1차 캐시에 반영
+            repository.update("mapA", 2000);
+            assertThat(MemberIdentityMap.get("mapA").getMoney()).isEqualTo(2000);
+
+            //증감 update 는 DB 가 계산하므로 1차 캐시에서 제거 => 다시 조회
+            repository.addMoney("mapA", 1000);
+            assertThat(MemberIdentityMap.get("mapA")).isNull();
+            assertThat(repository.findById("mapA").getMoney()).isEqualTo(3000);
+        });
+
+        //트랜잭션이 끝나면 버려진다.
+        assertThat(MemberIdentityMap.get("mapA")).isNull();
+        assertThat(repository.findById("mapA").getMoney()).isEqualTo(3000);
+    }
+}
@@ -0,0 +1,179 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class MemberRepositoryV5Test {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+        //batch 경계를 확인하기 위해 batchSize 를 작게 잡는다.
+        repository = new MemberRepositoryV5(dataSource, 2);
+    }
+
+    @AfterEach
+    void afterEach() {
+        for (int i = 0; i < 5; i++) {
+            repository.delete("batch" + i);
+        }
+        dataSource.close();
+    }
+
+    @Test
+    void saveAll() {
+        List<Member> members = List.of(
+                new Member("batch0", 1000),
+                new Member("batch1", 2000),
+                new Member("batch2", 3000),
+                new Member("batch3", 4000),
+                new Member("batch4", 5000));
+
+        SaveAllResult result = repository.saveAll(members);
+
+        assertThat(result.getSavedCount()).isEqualTo(5);
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(repository.findById("batch4").getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void saveAllDuplicateKey() {
+        repository.save(new Member("batch1", 0));
+
+        //batch1 은 이미 존재 => 해당 row 만 실패하고 나머지는 저장
+        SaveAllResult result = repository.saveAll(List.of(
+                new Member("batch0", 1000),
+                new Member("batch1", 2000),
+                new Member("batch2", 3000)));
+        log.info("failures={}", result.getFailures());
+
+        assertThat(result.getSavedCount()).isEqualTo(2);
+        assertThat(result.getDuplicateIds()).containsExactly("batch1");
+        assertThat(repository.findById("batch1").getMoney()).isEqualTo(0);
+        assertThat(repository.findById("batch2").getMoney()).isEqualTo(3000);
+    }
+
+    @Test
+    void saveAllDifferentFailuresInOneBatch() {
+        repository.save(new Member("batch1", 0));
+
+        //같은 batch 안에서 키 중복과 길이 초과(member_id varchar(10))가 따로 실패
+        SaveAllResult result = repository.saveAll(List.of(
+                new Member("batch1", 2000),
+                new Member("batchTooLong", 3000),
+                new Member("batch2", 4000)));
+        log.info("failures={}", result.getFailures());
+
+        assertThat(result.getSavedCount()).isEqualTo(1);
+        assertThat(result.getDuplicateIds()).containsExactly("batch1");
+        assertThat(result.getFailures().get("batchTooLong"))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .isNotInstanceOf(DuplicateKeyException.class);
+        assertThat(repository.findById("batch2").getMoney()).isEqualTo(4000);
+    }
+
+    @Test
+    void findAllById() {
+        repository.saveAll(List.of(
+                new Member("batch0", 1000),
+                new Member("batch1", 2000),
+                new Member("batch2", 3000)));
+
+        //batch3 은 없는 키, batch0 은 중복 요청
+        List<String> ids = List.of("batch0", "batch1", "batch2", "batch3", "batch0");
+        Map<String, Member> found = repository.findAllById(ids);
+
+        assertThat(found).containsOnlyKeys("batch0", "batch1", "batch2");
+        assertThat(found.get("batch2").getMoney()).isEqualTo(3000);
+        assertThat(InClauseSupport.missingIds(ids, found)).containsExactly("batch3");
+    }
+
+    @Test
+    void streamAll() {
+        repository.saveAll(List.of(
+                new Member("batch0", 1000),
+                new Member("batch1", 2000),
+                new Member("batch2", 3000)));
+
+        //close 해야 커넥션이 반환된다.
+        try (Stream<Member> members = repository.streamAll()) {
+            long count = members.filter(member -> member.getMemberId().startsWith("batch")).count();
+            assertThat(count).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void findPage() {
+        repository.saveAll(List.of(
+                new Member("batch0", 1000),
+                new Member("batch1", 2000),
+                new Member("batch2", 3000)));
+
+        //batch 로 시작하는 키만 2건씩 페이지 조회
+        List<String> pagedIds = new ArrayList<>();
+        String after = "batch";
+        List<Member> page;
+        do {
+            page = repository.findPage(after, 2);
+            for (Member member : page) {
+                if (member.getMemberId().startsWith("batch")) {
+                    pagedIds.add(member.getMemberId());
+                }
+            }
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getMemberId();
+        } while (page.size() == 2 && after.startsWith("batch"));
+
+        assertThat(pagedIds).containsExactly("batch0", "batch1", "batch2");
+    }
+
+    @Test
+    void findOptionalById() {
+        repository.save(new Member("batch0", 1000));
+
+        assertThat(repository.findOptionalById("batch0")).map(Member::getMoney).contains(1000);
+        assertThat(repository.findOptionalById("batch9")).isEmpty();
+    }
+
+    @Test
+    void saveIfAbsent() {
+        assertThat(repository.saveIfAbsent(new Member("batch0", 1000))).isTrue();
+        //이미 있으면 예외 없이 false, 기존 값 유지
+        assertThat(repository.saveIfAbsent(new Member("batch0", 2000))).isFalse();
+
+        assertThat(repository.findById("batch0").getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    void nonPositiveAmount() {
+        repository.save(new Member("batch0", 1000));
+
+        assertThatThrownBy(() -> repository.withdrawIfSufficient("batch0", -500))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> repository.withdrawIfSufficient("batch0", 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        //음수 delta 는 잔액 안에서만
+        assertThat(repository.addMoney("batch0", -2000)).isZero();
+        assertThat(repository.addMoney("batch0", -1000)).isEqualTo(1);
+
+        assertThat(repository.findById("batch0").getMoney()).isZero();
+    }
+}
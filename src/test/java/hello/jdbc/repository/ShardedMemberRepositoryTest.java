@@ -0,0 +1,141 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * shard 마다 독립된 인메모리 H2
+ */
+@Slf4j
+class ShardedMemberRepositoryTest {
+
+    private static final int SHARD_COUNT = 3;
+    private static final int MEMBER_COUNT = 300;
+
+    List<HikariDataSource> dataSources = new ArrayList<>();
+    ShardedMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl("jdbc:h2:mem:shard" + i + ";DB_CLOSE_DELAY=-1");
+            dataSource.setUsername("sa");
+            dataSource.setPassword("");
+            dataSource.setMaximumPoolSize(4);
+            new JdbcTemplate(dataSource).execute("drop table if exists member");
+            new JdbcTemplate(dataSource).execute("create table member (member_id varchar(10), " +
+                    "money integer not null default 0, version bigint not null default 0, primary key (member_id))");
+            dataSources.add(dataSource);
+        }
+        repository = new ShardedMemberRepository(new ArrayList<DataSource>(dataSources));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.close();
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void routeByMemberId() {
+        List<Member> members = members();
+        SaveAllResult result = repository.saveAll(members);
+        assertThat(result.getSavedCount()).isEqualTo(MEMBER_COUNT);
+
+        //회원은 자기 shard 에만 있고, 모든 shard 에 고르게 나뉜다.
+        int total = 0;
+        for (ShardedMemberRepository.Shard shard : repository.getShards()) {
+            int count = new JdbcTemplate(shard.getDataSource()).queryForObject("select count(*) from member", Integer.class);
+            log.info("shard={}, count={}", shard.getIndex(), count);
+            assertThat(count).isGreaterThan(MEMBER_COUNT / SHARD_COUNT / 2);
+            total += count;
+        }
+        assertThat(total).isEqualTo(MEMBER_COUNT);
+        assertThat(repository.shardFor("m1").getRepository().findOptionalById("m1")).isPresent();
+        assertThat(repository.findById("m1").getMoney()).isEqualTo(1);
+    }
+
+    @Test
+    void scatterGather() {
+        repository.saveAll(members());
+
+        Map<String, Member> found = repository.findAllById(List.of("m0", "m10", "m100", "m299", "noMember"));
+        assertThat(found).containsOnlyKeys("m0", "m10", "m100", "m299");
+
+        //키 중복은 shard 결과를 합쳐서 반환
+        SaveAllResult duplicate = repository.saveAll(List.of(new Member("m0", 0), new Member("m300", 0)));
+        assertThat(duplicate.getSavedCount()).isEqualTo(1);
+        assertThat(duplicate.getDuplicateIds()).containsExactly("m0");
+    }
+
+    @Test
+    void findPageAcrossShards() {
+        repository.saveAll(members());
+
+        List<String> pagedIds = new ArrayList<>();
+        String after = null;
+        List<Member> page;
+        do {
+            page = repository.findPage(after, 50);
+            page.forEach(member -> pagedIds.add(member.getMemberId()));
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getMemberId();
+        } while (page.size() == 50);
+
+        assertThat(pagedIds).hasSize(MEMBER_COUNT).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shardTransaction() {
+        repository.save(new Member("m1", 1000));
+        TransactionTemplate txTemplate = new TransactionTemplate(repository.transactionManager("m1"));
+
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            repository.addMoney("m1", 500);
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(repository.findById("m1").getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    void crossShardCallInTransaction() {
+        TransactionTemplate txTemplate = new TransactionTemplate(repository.transactionManager("m1"));
+        String otherShardId = members().stream()
+                .map(Member::getMemberId)
+                .filter(memberId -> repository.shardFor(memberId) != repository.shardFor("m1"))
+                .findFirst().orElseThrow();
+
+        //같은 shard 회원만이면 트랜잭션 안에서 실행
+        txTemplate.executeWithoutResult(status -> repository.saveAll(List.of(new Member("m1", 1000))));
+
+        //다른 shard 가 섞이면 아무것도 저장하지 않고 거절
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status ->
+                repository.saveAll(List.of(new Member("m2", 1000), new Member(otherShardId, 1000)))))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(repository.findOptionalById(otherShardId)).isEmpty();
+        assertThat(repository.findById("m1").getMoney()).isEqualTo(1000);
+    }
+
+    private List<Member> members() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            members.add(new Member("m" + i, i));
+        }
+        return members;
+    }
+}
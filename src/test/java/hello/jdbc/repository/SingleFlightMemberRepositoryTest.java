@@ -0,0 +1,162 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class SingleFlightMemberRepositoryTest {
+
+    HikariDataSource dataSource;
+    SlowRepository delegate;
+
+    /**
+     * 쿼리가 오래 걸리는 상황 재현, release 가 열릴 때까지 조회가 끝나지 않는다.
+     */
+    static class SlowRepository extends MemberRepositoryV5 {
+        private final AtomicInteger queryCount = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch release = new CountDownLatch(0);
+        //설정하면 조회 대신 던진다.
+        private volatile Error failure;
+
+        SlowRepository(HikariDataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Optional<Member> findOptionalById(String memberId) {
+            queryCount.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return super.findOptionalById(memberId);
+        }
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+
+        delegate = new SlowRepository(dataSource);
+        delegate.save(new Member("flightA", 1000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        delegate.delete("flightA");
+        dataSource.close();
+    }
+
+    @Test
+    void collapseConcurrentReads() throws Exception {
+        SingleFlightMemberRepository repository = new SingleFlightMemberRepository(delegate);
+        delegate.release = new CountDownLatch(1);
+        int threadCount = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<Member>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> repository.findById("flightA")));
+        //첫 조회가 쿼리 중일 때 나머지 요청
+        delegate.started.await();
+        for (int i = 1; i < threadCount; i++) {
+            futures.add(executor.submit(() -> repository.findById("flightA")));
+        }
+        while (repository.getCollapsedCount() < threadCount - 1) {
+            Thread.sleep(1);
+        }
+        delegate.release.countDown();
+
+        List<Member> members = new ArrayList<>();
+        for (Future<Member> future : futures) {
+            members.add(future.get());
+        }
+        executor.shutdown();
+
+        assertThat(members).allMatch(member -> member.getMoney() == 1000);
+        //스레드마다 다른 객체
+        assertThat(members.get(1)).isNotSameAs(members.get(2));
+        assertThat(delegate.queryCount.get()).isEqualTo(1);
+        assertThat(repository.getCollapsedCount()).isEqualTo(threadCount - 1);
+        log.info("collapseRatio={}", repository.getCollapseRatio());
+    }
+
+    @Test
+    void missingMember() {
+        SingleFlightMemberRepository repository = new SingleFlightMemberRepository(delegate);
+
+        assertThatThrownBy(() -> repository.findById("noMember"))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.findOptionalById("noMember")).isEmpty();
+    }
+
+    @Test
+    void waitTimeout() throws Exception {
+        SingleFlightMemberRepository repository = new SingleFlightMemberRepository(delegate, Duration.ofMillis(50));
+        delegate.release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Member> leader = executor.submit(() -> repository.findById("flightA"));
+        delegate.started.await();
+
+        assertThatThrownBy(() -> repository.findById("flightA"))
+                .isInstanceOf(QueryTimeoutException.class);
+        assertThat(repository.getTimeoutCount()).isEqualTo(1);
+
+        delegate.release.countDown();
+        assertThat(leader.get(1, TimeUnit.SECONDS).getMoney()).isEqualTo(1000);
+        executor.shutdown();
+    }
+
+    @Test
+    void leaderError() throws Exception {
+        SingleFlightMemberRepository repository = new SingleFlightMemberRepository(delegate);
+        delegate.release = new CountDownLatch(1);
+        delegate.failure = new AssertionError("query failed");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Member> leader = executor.submit(() -> repository.findById("flightA"));
+        delegate.started.await();
+        Future<Member> follower = executor.submit(() -> repository.findById("flightA"));
+        while (repository.getCollapsedCount() < 1) {
+            Thread.sleep(1);
+        }
+        delegate.release.countDown();
+
+        //기다리던 요청도 같은 Error 로 끝난다.
+        assertThatThrownBy(() -> leader.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(AssertionError.class);
+        assertThatThrownBy(() -> follower.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(AssertionError.class);
+        executor.shutdown();
+
+        //진행 중 조회가 남지 않아서 다음 요청은 새로 쿼리한다.
+        delegate.failure = null;
+        assertThat(repository.findById("flightA").getMoney()).isEqualTo(1000);
+        assertThat(delegate.queryCount.get()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,167 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class SlottedMemberRepositoryTest {
+
+    HikariDataSource dataSource;
+    SlottedMemberRepository repository;
+    TransactionTemplate txTemplate;
+    JdbcTemplate template;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+
+        repository = new SlottedMemberRepository(new MemberRepositoryV5(dataSource), dataSource, Set.of("hot"), 4);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        template = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("hot");
+        repository.delete("cold");
+        dataSource.close();
+    }
+
+    @Test
+    void creditToSlots() throws Exception {
+        repository.save(new Member("hot", 1000));
+        int threadCount = 4;
+        int creditCount = 50;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < creditCount; j++) {
+                    assertThat(repository.addMoney("hot", 10)).isEqualTo(1);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //기본 row 는 그대로, 조회는 합계
+        assertThat(baseMoney("hot")).isEqualTo(1000);
+        Member hot = repository.findById("hot");
+        assertThat(hot.getMoney()).isEqualTo(1000 + 10 * threadCount * creditCount);
+        assertThat(hot.getVersion()).isEqualTo(threadCount * creditCount);
+    }
+
+    @Test
+    void withdrawSweepsSlots() {
+        repository.save(new Member("hot", 100));
+        repository.addMoney("hot", 500);
+        repository.addMoney("hot", 500);
+
+        //기본 잔액만으로는 부족하지만 slot 을 모으면 충분
+        assertThat(repository.withdrawIfSufficient("hot", 800)).isEqualTo(1);
+
+        assertThat(baseMoney("hot")).isEqualTo(300);
+        assertThat(template.queryForObject("select sum(money) from member_slot where member_id=?", Integer.class, "hot"))
+                .isEqualTo(0);
+        assertThat(repository.findById("hot").getMoney()).isEqualTo(300);
+    }
+
+    @Test
+    void sweepKeepsSlotsWhenMemberMissing() {
+        repository.save(new Member("hot", 100));
+        repository.addMoney("hot", 500);
+        //리포지토리를 거치지 않고 기본 row 만 삭제
+        template.update("delete from member where member_id=?", "hot");
+
+        assertThat(repository.withdrawIfSufficient("hot", 100)).isEqualTo(0);
+
+        //slot 잔액은 그대로 남는다.
+        assertThat(template.queryForObject("select sum(money) from member_slot where member_id=?", Integer.class, "hot"))
+                .isEqualTo(500);
+    }
+
+    @Test
+    void findByIdForUpdateReturnsTotal() {
+        repository.save(new Member("hot", 100));
+        repository.addMoney("hot", 50);
+
+        txTemplate.executeWithoutResult(status -> {
+            Member hot = repository.findByIdForUpdate("hot");
+            assertThat(hot.getMoney()).isEqualTo(150);
+            //절대값 변경 (MemberServiceV7 방식)
+            repository.update("hot", hot.getMoney() - 30);
+        });
+
+        assertThat(repository.findById("hot").getMoney()).isEqualTo(120);
+    }
+
+    @Test
+    void coldAccountUnchanged() {
+        repository.save(new Member("cold", 100));
+        repository.addMoney("cold", 50);
+
+        assertThat(baseMoney("cold")).isEqualTo(150);
+    }
+
+    @Test
+    void findAllByIdMixesHotAndCold() {
+        repository.save(new Member("hot", 100));
+        repository.save(new Member("cold", 200));
+        repository.addMoney("hot", 50);
+
+        Map<String, Member> found = repository.findAllById(List.of("hot", "cold", "noMember"));
+
+        assertThat(found).containsOnlyKeys("hot", "cold");
+        assertThat(found.get("hot").getMoney()).isEqualTo(150);
+        assertThat(found.get("hot").getVersion()).isEqualTo(1);
+        assertThat(found.get("cold").getMoney()).isEqualTo(200);
+    }
+
+    @Test
+    void deleteRemovesSlots() {
+        repository.save(new Member("hot", 100));
+        repository.addMoney("hot", 50);
+
+        repository.delete("hot");
+
+        assertThat(repository.findOptionalById("hot")).isEmpty();
+        assertThat(template.queryForObject("select count(*) from member_slot where member_id=?", Integer.class, "hot"))
+                .isEqualTo(0);
+    }
+
+    @Test
+    void moneyOverflow() {
+        repository.save(new Member("hot", Integer.MAX_VALUE - 5));
+        repository.addMoney("hot", 10);
+
+        //잘라낸 음수 잔액을 돌려주지 않는다.
+        assertThatThrownBy(() -> repository.findById("hot"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private int baseMoney(String memberId) {
+        return template.queryForObject("select money from member where member_id=?", Integer.class, memberId);
+    }
+}
@@ -0,0 +1,123 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class WriteBehindMemberRepositoryTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 memberRepositoryV5;
+    WriteBehindMemberRepository repository;
+    TransactionTemplate txTemplate;
+    //트랜잭션 커넥션으로 DB 값을 직접 확인
+    JdbcTemplate template;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+        memberRepositoryV5 = new MemberRepositoryV5(dataSource);
+        repository = new WriteBehindMemberRepository(memberRepositoryV5);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        template = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("uowA");
+        repository.delete("uowB");
+        dataSource.close();
+    }
+
+    @Test
+    void flushAtCommit() {
+        repository.save(new Member("uowA", 10000));
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update("uowA", 9000);
+            repository.update("uowA", 8000);
+            repository.save(new Member("uowB", 500));
+
+            //아직 DB 에는 반영 전, findById 는 모아둔 변경을 반영
+            assertThat(dbMoney("uowA")).isEqualTo(10000);
+            assertThat(repository.findById("uowA").getMoney()).isEqualTo(8000);
+            assertThat(repository.findById("uowB").getMoney()).isEqualTo(500);
+
+            //read-after-write 가 필요하면 flush
+            repository.flush();
+            assertThat(dbMoney("uowA")).isEqualTo(8000);
+
+            repository.update("uowA", 7000);
+        });
+
+        assertThat(memberRepositoryV5.findById("uowA").getMoney()).isEqualTo(7000);
+        assertThat(memberRepositoryV5.findById("uowB").getMoney()).isEqualTo(500);
+    }
+
+    @Test
+    void rollbackDiscardsWrites() {
+        repository.save(new Member("uowA", 10000));
+
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            repository.update("uowA", 0);
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepositoryV5.findById("uowA").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void pendingUpdateKeepsVersion() {
+        repository.save(new Member("uowA", 10000));
+        long version = memberRepositoryV5.findById("uowA").getVersion();
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update("uowA", 9000);
+            repository.update("uowA", 8000);
+
+            //flush 되면 update 한번 => version + 1
+            Member member = repository.findById("uowA");
+            assertThat(member.getMoney()).isEqualTo(8000);
+            assertThat(member.getVersion()).isEqualTo(version + 1);
+
+            //읽은 version 으로 낙관적 락 update (모아둔 update 를 먼저 내보낸다)
+            repository.updateWithVersion("uowA", 7000, member.getVersion());
+        });
+
+        Member saved = memberRepositoryV5.findById("uowA");
+        assertThat(saved.getMoney()).isEqualTo(7000);
+        assertThat(saved.getVersion()).isEqualTo(version + 2);
+    }
+
+    @Test
+    void duplicateKeyAtCommit() {
+        repository.save(new Member("uowA", 10000));
+
+        //키 중복은 save 가 아니라 커밋(flush) 시점에 발생하고 트랜잭션 전체가 롤백
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            repository.save(new Member("uowB", 500));
+            repository.delete("uowA");
+            repository.save(new Member("uowA", 1));
+            repository.save(new Member("uowA", 2));
+        })).isInstanceOf(DuplicateKeyException.class);
+
+        assertThat(memberRepositoryV5.findById("uowA").getMoney()).isEqualTo(10000);
+        assertThat(memberRepositoryV5.findOptionalById("uowB")).isEmpty();
+    }
+
+    private int dbMoney(String memberId) {
+        return template.queryForObject("select money from member where member_id=?", Integer.class, memberId);
+    }
+}
@@ -0,0 +1,40 @@
+package hello.jdbc.repository.bloom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScalableBloomFilterTest {
+
+    @Test
+    void noFalseNegative() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("member" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.mightContain("member" + i)).isTrue();
+        }
+    }
+
+    @Test
+    void growKeepsFalsePositiveRate() {
+        //처음 용량의 10배를 넣는다.
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("member" + i);
+        }
+        assertThat(filter.getStageCount()).isGreaterThan(1);
+
+        int falsePositives = 0;
+        int lookups = 100_000;
+        for (int i = 0; i < lookups; i++) {
+            if (filter.mightContain("missing" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / lookups;
+        assertThat(rate).isLessThan(0.02);
+        assertThat(filter.getExpectedFalsePositiveRate()).isLessThan(0.02);
+    }
+}
@@ -0,0 +1,190 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 그룹 커밋 이체
+ */
+@Slf4j
+@SpringBootTest
+class GroupCommitTransferServiceTest {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final String MEMBER_EX = "ex";
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberService memberService;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        @Autowired
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberService memberService() {
+            return new MemberServiceV5(memberRepository());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("여러 요청을 배치로 커밋")
+    void submit() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+        int transferCount = 200;
+
+        try (GroupCommitTransferService groupCommit =
+                     new GroupCommitTransferService(memberService, 1000, 50, Duration.ofMillis(20))) {
+            //when
+            List<CompletableFuture<TransferResult>> futures = new ArrayList<>();
+            for (int i = 0; i < transferCount; i++) {
+                futures.add(groupCommit.submit(MEMBER_A, MEMBER_B, 10));
+            }
+            CompletableFuture<TransferResult> failed = groupCommit.submit(MEMBER_A, MEMBER_EX, 10);
+
+            //then : 실패한 요청만 실패
+            for (CompletableFuture<TransferResult> future : futures) {
+                assertThat(future.get().isSuccess()).isTrue();
+            }
+            assertThat(failed.get().isSuccess()).isFalse();
+            log.info("batches={}, transfers={}", groupCommit.getBatchCount(), groupCommit.getTransferCount());
+            assertThat(groupCommit.getBatchCount()).isLessThan(transferCount);
+        }
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000 - 10 * transferCount);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000 + 10 * transferCount);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("큐가 가득 차면 거절")
+    void queueFull() throws Exception {
+        //given : 배치가 차거나 1초가 지나야 커밋
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        try (GroupCommitTransferService groupCommit =
+                     new GroupCommitTransferService(memberService, 2, 10, Duration.ofSeconds(1))) {
+            //when
+            CompletableFuture<TransferResult> first = groupCommit.submit(MEMBER_A, MEMBER_B, 10);
+            CompletableFuture<TransferResult> second = groupCommit.submit(MEMBER_A, MEMBER_B, 10);
+            CompletableFuture<TransferResult> rejected = groupCommit.submit(MEMBER_A, MEMBER_B, 10);
+
+            //then
+            assertThat(rejected).isCompletedExceptionally();
+            assertThat(first.get().isSuccess()).isTrue();
+            assertThat(second.get().isSuccess()).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("writer 가 Error 로 멈추면 기다리는 요청을 모두 실패")
+    void writerError() throws Exception {
+        //given : 배치 커밋이 Error 를 던지는 서비스
+        MemberService failing = new MemberService() {
+            @Override
+            public void accountTransFer(String fromId, String toId, int money) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<TransferResult> accountTransferAll(List<Transfer> transfers) {
+                throw new OutOfMemoryError("test");
+            }
+
+            @Override
+            public void bizLogic(String fromId, String toId, int money) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        try (GroupCommitTransferService groupCommit =
+                     new GroupCommitTransferService(failing, 1000, 2, Duration.ofSeconds(1))) {
+            //when : 배치가 차서 바로 커밋
+            CompletableFuture<TransferResult> first = groupCommit.submit(MEMBER_A, MEMBER_B, 10);
+            CompletableFuture<TransferResult> second = groupCommit.submit(MEMBER_A, MEMBER_B, 10);
+
+            //then
+            assertThatThrownBy(first::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(OutOfMemoryError.class);
+            assertThatThrownBy(second::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(OutOfMemoryError.class);
+            assertThatThrownBy(() -> groupCommit.submit(MEMBER_A, MEMBER_B, 10).get())
+                    .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(RejectedExecutionException.class);
+        }
+    }
+
+    @Test
+    @DisplayName("close() 와 겹친 요청도 모두 끝난다")
+    void submitDuringClose() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 1_000_000));
+        memberRepository.save(new Member(MEMBER_B, 1_000_000));
+        int threadCount = 4;
+        ConcurrentLinkedQueue<CompletableFuture<TransferResult>> futures = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        GroupCommitTransferService groupCommit =
+                new GroupCommitTransferService(memberService, 1000, 20, Duration.ofMillis(1));
+
+        //when : 요청을 계속 넣는 도중에 close
+        for (int i = 0; i < threadCount; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 200; j++) {
+                    futures.add(groupCommit.submit(MEMBER_A, MEMBER_B, 1));
+                }
+            });
+        }
+        groupCommit.close();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        //then : 커밋되거나 거절되거나, 끝나지 않는 요청은 없다.
+        for (CompletableFuture<TransferResult> future : futures) {
+            assertThat(future.handle((result, e) -> e == null || e instanceof RejectedExecutionException))
+                    .succeedsWithin(Duration.ofSeconds(5)).isEqualTo(true);
+        }
+    }
+}
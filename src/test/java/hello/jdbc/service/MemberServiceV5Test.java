@@ -0,0 +1,204 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.HiLoMemberIdGenerator;
+import hello.jdbc.repository.MemberIdGenerator;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 원자적 증감 update 이체
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV5Test {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final String MEMBER_EX = "ex";
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberService memberService;
+    @Autowired
+    private MemberCreator memberCreator;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        @Autowired
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberIdGenerator memberIdGenerator() {
+            return new HiLoMemberIdGenerator(dataSource);
+        }
+
+        @Bean
+        MemberService memberService() {
+            return new MemberServiceV5(memberRepository());
+        }
+
+        @Bean
+        MemberCreator memberCreator() {
+            return new MemberCreateService(memberRepository(), memberIdGenerator());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("정상 이체")
+    void accountTransFer() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.accountTransFer(MEMBER_A, MEMBER_B, 2000);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생")
+    void accountTransFerEx() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransFer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then : 출금까지 롤백
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족")
+    void accountTransFerInsufficient() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransFer(MEMBER_A, MEMBER_B, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("0 이하 금액")
+    void accountTransFerNonPositive() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransFer(MEMBER_A, MEMBER_B, -2000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberService.accountTransFer(MEMBER_A, MEMBER_B, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        //then : 받는 쪽 잔액이 빠져나가지 않는다.
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("일괄 이체 - 실패한 건만 롤백")
+    void accountTransferAll() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when : 두번째(검증 실패), 네번째(잔액 부족)만 실패
+        List<TransferResult> results = memberService.accountTransferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_EX, 1000),
+                new Transfer(MEMBER_B, MEMBER_A, 500),
+                new Transfer(MEMBER_A, MEMBER_B, 100000)));
+
+        //then
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, false, true, false);
+        assertThat(results.get(1).getError()).isInstanceOf(IllegalStateException.class);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("일괄 이체 - chunk 단위 트랜잭션")
+    void transferBatchExecutor() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        TransferBatchExecutor executor = new TransferBatchExecutor(memberService, 2);
+
+        //when
+        List<TransferResult> results = executor.execute(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_B, MEMBER_A, 3000),
+                new Transfer(MEMBER_A, MEMBER_EX, 1000),
+                new Transfer(MEMBER_A, MEMBER_B, 1000)));
+
+        //then : 검증 실패로 네번째만 실패
+        assertThat(results).hasSize(5);
+        assertThat(results).filteredOn(result -> !result.isSuccess()).hasSize(1);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("memberId 발급 후 회원 저장")
+    void create() {
+        Member memberA = memberCreator.create(1000);
+        Member memberB = memberCreator.create(2000);
+
+        try {
+            assertThat(memberA.getMemberId()).isNotEqualTo(memberB.getMemberId());
+            assertThat(memberRepository.findById(memberA.getMemberId()).getMoney()).isEqualTo(1000);
+            assertThat(memberRepository.findById(memberB.getMemberId()).getMoney()).isEqualTo(2000);
+        } finally {
+            memberRepository.delete(memberA.getMemberId());
+            memberRepository.delete(memberB.getMemberId());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_1;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 낙관적 락(version) 이체 + 재시도
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV8Test {
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final String MEMBER_EX = "ex";
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberServiceV8 memberService;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        @Autowired
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV8 memberService() {
+            //동시 이체 테스트에서 모두 성공하도록 재시도를 넉넉하게
+            return new MemberServiceV8(transactionManager, memberRepository(), 50, Duration.ofMillis(1), Duration.ofMillis(20));
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("정상 이체")
+    void accountTransFer() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.accountTransFer(MEMBER_A, MEMBER_B, 2000);
+
+        //then : 변경할 때마다 version 증가
+        Member findMemberA = memberRepository.findById(MEMBER_A);
+        assertThat(findMemberA.getMoney()).isEqualTo(8000);
+        assertThat(findMemberA.getVersion()).isEqualTo(1);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생")
+    void accountTransFerEx() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransFer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_A).getVersion()).isEqualTo(0);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("0 이하 금액 이체")
+    void accountTransFerNonPositive() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransFer(MEMBER_A, MEMBER_B, -2000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberService.accountTransFer(MEMBER_A, MEMBER_B, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        //then : 받는 쪽 잔액이 빠져나가지 않는다.
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("V4_1 리포지토리 - version 충돌도 재시도")
+    void retryConflictOnV4_1() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        AtomicBoolean interfered = new AtomicBoolean();
+        MemberRepositoryV4_1 repository = new MemberRepositoryV4_1(dataSource) {
+            @Override
+            public void updateWithVersion(String memberId, int money, long version) {
+                //첫 update 직전에 다른 커넥션이 먼저 변경 => version 충돌
+                if (interfered.compareAndSet(false, true)) {
+                    try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement()) {
+                        stmt.executeUpdate("update member set money=money-1000, version=version+1 where member_id='" + MEMBER_A + "'");
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                super.updateWithVersion(memberId, money, version);
+            }
+        };
+        MemberServiceV8 service = new MemberServiceV8(transactionManager, repository, 3, Duration.ofMillis(1), Duration.ofMillis(5));
+
+        //when
+        service.accountTransFer(MEMBER_A, MEMBER_B, 2000);
+
+        //then : 충돌 한 번 후 바뀐 잔액 기준으로 다시 이체
+        assertThat(service.getConflictCount()).isEqualTo(1);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(7000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("이미 바뀐 version 으로 update")
+    void updateWithStaleVersion() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        Member stale = memberRepository.findById(MEMBER_A);
+        memberRepository.update(MEMBER_A, 5000);
+
+        //when
+        assertThatThrownBy(() -> memberRepository.updateWithVersion(MEMBER_A, 0, stale.getVersion()))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    @DisplayName("동시 이체 - 충돌은 재시도")
+    void concurrentTransfer() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 100000));
+        memberRepository.save(new Member(MEMBER_B, 100000));
+        int threadCount = 4;
+        int transferCount = 20;
+
+        //when
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < transferCount; j++) {
+                    memberService.accountTransFer(MEMBER_A, MEMBER_B, 10);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //then : 갱신 손실 없음
+        log.info("conflicts={}", memberService.getConflictCount());
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(100000 - 10 * threadCount * transferCount);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(100000 + 10 * threadCount * transferCount);
+        assertThat(memberService.getExhaustedCount()).isZero();
+    }
+}
@@ -0,0 +1,136 @@
+package hello.jdbc.service.ledger;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class LedgerMemberServiceTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+        repository = new MemberRepositoryV5(dataSource);
+        repository.save(new Member("ledA", 10000));
+        repository.save(new Member("ledB", 10000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("ledA");
+        repository.delete("ledB");
+        dataSource.close();
+    }
+
+    @Test
+    void transferAndFlush() throws Exception {
+        LedgerMemberService ledger = new LedgerMemberService(dataSource, repository, tempDir.resolve("ledger.journal"),
+                64, Duration.ofMillis(10), false);
+        int threadCount = 4;
+        int transferCount = 250;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            boolean forward = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < transferCount; j++) {
+                    if (forward) {
+                        ledger.accountTransFer("ledA", "ledB", 3);
+                    } else {
+                        ledger.accountTransFer("ledB", "ledA", 1);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThatThrownBy(() -> ledger.accountTransFer("ledA", "ledB", 100000))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> ledger.accountTransFer("ledA", "none", 10))
+                .isInstanceOf(IllegalStateException.class);
+        ledger.close();
+
+        //A : -3 * 500 + 1 * 500
+        assertThat(repository.findById("ledA").getMoney()).isEqualTo(10000 - 1000);
+        assertThat(repository.findById("ledB").getMoney()).isEqualTo(10000 + 1000);
+    }
+
+    @Test
+    void recoverFromJournal() throws Exception {
+        Path journal = tempDir.resolve("ledger.journal");
+        //flush 되지 않도록 주기를 길게
+        LedgerMemberService ledger = new LedgerMemberService(dataSource, repository, journal,
+                64, Duration.ofHours(1), false);
+        for (int i = 0; i < 100; i++) {
+            ledger.accountTransFer("ledA", "ledB", 10);
+        }
+        ledger.halt();
+
+        //DB 에는 아직 반영 전
+        assertThat(repository.findById("ledA").getMoney()).isEqualTo(10000);
+
+        //다시 시작하면 저널을 반영
+        LedgerMemberService recovered = new LedgerMemberService(dataSource, repository, journal);
+        assertThat(repository.findById("ledA").getMoney()).isEqualTo(9000);
+        assertThat(repository.findById("ledB").getMoney()).isEqualTo(11000);
+
+        //이어서 이체
+        recovered.accountTransFer("ledB", "ledA", 500);
+        recovered.close();
+        assertThat(repository.findById("ledA").getMoney()).isEqualTo(9500);
+    }
+
+    @Test
+    void closeTimesOutWhenDbDown() throws Exception {
+        Path journal = tempDir.resolve("ledger.journal");
+        HikariDataSource ledgerDataSource = TestDataSources.pooled();
+        //close() 에서만 flush 되도록 주기를 길게
+        LedgerMemberService ledger = new LedgerMemberService(ledgerDataSource, new MemberRepositoryV5(ledgerDataSource), journal,
+                64, Duration.ofHours(1), false);
+        long flushedSequence = ledger.getFlushedSequence();
+        for (int i = 0; i < 10; i++) {
+            ledger.accountTransFer("ledA", "ledB", 10);
+        }
+
+        //DB 장애 흉내
+        ledgerDataSource.close();
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> ledger.close(Duration.ofMillis(500)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("flushedSequence=" + flushedSequence);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+        assertThat(ledger.getFlushedSequence()).isEqualTo(flushedSequence);
+        assertThat(repository.findById("ledA").getMoney()).isEqualTo(10000);
+
+        //반영하지 못한 이체는 저널에서 복구
+        LedgerMemberService recovered = new LedgerMemberService(dataSource, repository, journal);
+        assertThat(repository.findById("ledA").getMoney()).isEqualTo(9900);
+        recovered.close();
+    }
+}
@@ -0,0 +1,46 @@
+package hello.jdbc.service.netting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NetDeltaMapTest {
+
+    @Test
+    void add() {
+        NetDeltaMap map = new NetDeltaMap();
+        map.add("memberA", -100);
+        map.add("memberB", 100);
+        map.add("memberB", -70);
+        map.add("memberA", 70);
+
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get("memberA")).isEqualTo(-30);
+        assertThat(map.get("memberB")).isEqualTo(30);
+        assertThat(map.get("memberC")).isEqualTo(0);
+        assertThat(map.containsKey("memberC")).isFalse();
+        assertThat(map.sortedKeys()).containsExactly("memberA", "memberB");
+    }
+
+    @Test
+    void resize() {
+        //HashMap 과 같은 결과인지 비교
+        NetDeltaMap map = new NetDeltaMap();
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            String memberId = "m" + ThreadLocalRandom.current().nextInt(3000);
+            long delta = ThreadLocalRandom.current().nextInt(-1000, 1000);
+            map.add(memberId, delta);
+            expected.merge(memberId, delta, Long::sum);
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        Map<String, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,95 @@
+package hello.jdbc.service.netting;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.TestDataSources;
+import hello.jdbc.domain.Member;
+import hello.jdbc.domain.Transfer;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class NettingTransferServiceTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+    NettingTransferService nettingService;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDataSources.pooled();
+        repository = new MemberRepositoryV5(dataSource);
+        nettingService = new NettingTransferService(new DataSourceTransactionManager(dataSource), repository);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("netA");
+        repository.delete("netB");
+        repository.delete("netC");
+        dataSource.close();
+    }
+
+    @Test
+    void settle() {
+        repository.save(new Member("netA", 1000));
+        repository.save(new Member("netB", 1000));
+        repository.save(new Member("netC", 1000));
+
+        //A 는 중간에 잔액보다 많이 보내지만 최종 순증감은 -500
+        NettingResult result = nettingService.settle(List.of(
+                new Transfer("netA", "netB", 1500),
+                new Transfer("netB", "netA", 1000),
+                new Transfer("netB", "netC", 300),
+                new Transfer("netC", "netB", 300)));
+
+        assertThat(result.getTransferCount()).isEqualTo(4);
+        assertThat(result.getAccountCount()).isEqualTo(3);
+        //C 는 순증감 0 이라 update 하지 않는다.
+        assertThat(result.getUpdatedCount()).isEqualTo(2);
+        assertThat(repository.findById("netA").getMoney()).isEqualTo(500);
+        assertThat(repository.findById("netB").getMoney()).isEqualTo(1500);
+        assertThat(repository.findById("netC").getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    void settleRejected() {
+        repository.save(new Member("netA", 1000));
+        repository.save(new Member("netB", 1000));
+
+        assertThatThrownBy(() -> nettingService.settle(List.of(
+                new Transfer("netA", "netB", 500),
+                new Transfer("netA", "netB", 600))))
+                .isInstanceOfSatisfying(NettingRejectedException.class,
+                        e -> assertThat(e.getRejectedIds()).containsExactly("netA"));
+
+        //전체 롤백
+        assertThat(repository.findById("netA").getMoney()).isEqualTo(1000);
+        assertThat(repository.findById("netB").getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    void settleRejectsMissingMemberWithZeroDelta() {
+        repository.save(new Member("netA", 1000));
+        repository.save(new Member("netB", 1000));
+
+        //없는 회원 netC 의 순증감이 0 이어도 거절
+        assertThatThrownBy(() -> nettingService.settle(List.of(
+                new Transfer("netA", "netB", 100),
+                new Transfer("netA", "netC", 300),
+                new Transfer("netC", "netA", 300))))
+                .isInstanceOfSatisfying(NettingRejectedException.class,
+                        e -> assertThat(e.getRejectedIds()).containsExactly("netC"));
+
+        assertThat(repository.findById("netA").getMoney()).isEqualTo(1000);
+        assertThat(repository.findById("netB").getMoney()).isEqualTo(1000);
+    }
+}